@@ -0,0 +1,310 @@
+package ca.draconic.vote;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.math3.FieldElement;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+/**
+ * A bounded cache of analyses of preference matrices, keyed by the options, a
+ * {@link PreferenceMatrix#fingerprint() fingerprint} of the counts, and the analysis.  The least
+ * recently used result is evicted once the cache is full.  Each result is stored with a snapshot of
+ * the counts it was computed from, and a hit is only served once the counts are confirmed to match, so
+ * a fingerprint collision costs a recomputation rather than a wrong result.  The analyses of the
+ * same counts share one snapshot, which is dropped with the last of them.
+ *
+ * Counts from a {@link StreamingTally} that have not changed since they were last confirmed are
+ * recognised by the tally and its number of batches, so a hit costs no more than the lookup.
+ *
+ * Results are shared between callers and must not be modified.  Two callers missing on the same
+ * key at once may both compute the result.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Option>
+ * @param <Count>
+ */
+public class AnalysisCache<Option, Count extends FieldElement<Count> & Comparable<Count>> {
+
+    /**
+     * An analysis of a preference matrix, identified by name
+     *
+     * @param <Option>
+     * @param <Count>
+     * @param <Result>
+     */
+    public static final class Analysis<Option, Count extends FieldElement<Count> & Comparable<Count>, Result> {
+        final String name;
+        final Function<PreferenceMatrix<Option, Count>, Result> compute;
+
+        private Analysis(String name, Function<PreferenceMatrix<Option, Count>, Result> compute) {
+            this.name = name;
+            this.compute = compute;
+        }
+
+        /**
+         * An analysis with the given name.  Analyses with the same name are treated as the same.
+         * @param name
+         * @param compute
+         * @return
+         */
+        public static <Option, Count extends FieldElement<Count> & Comparable<Count>, Result>
+        Analysis<Option, Count, Result> of(String name, Function<PreferenceMatrix<Option, Count>, Result> compute) {
+            return new Analysis<>(name, compute);
+        }
+
+        public static <Option, Count extends FieldElement<Count> & Comparable<Count>>
+        Analysis<Option, Count, PreferenceMatrix<Option, Count>> beatPaths() {
+            return of("beatPaths", PreferenceMatrix::beatPaths);
+        }
+
+        public static <Option, Count extends FieldElement<Count> & Comparable<Count>>
+        Analysis<Option, Count, List<Set<Option>>> optionsByPreference() {
+            return of("optionsByPreference", PreferenceMatrix::optionsByPreference);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class Key {
+        final List<?> options;
+        final long fingerprint;
+        /**
+         * Name of the analysis, or null for the key of a snapshot
+         */
+        final String analysis;
+        final int hash;
+
+        Key(List<?> options, long fingerprint, String analysis) {
+            this.options = options;
+            this.fingerprint = fingerprint;
+            this.analysis = analysis;
+            this.hash = Objects.hash(options, fingerprint, analysis);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return fingerprint==other.fingerprint && Objects.equals(analysis, other.analysis)
+                    && options.equals(other.options);
+        }
+
+        Key snapshot() {
+            return new Key(options, fingerprint, null);
+        }
+    }
+
+    /**
+     * A copy of the counts, shared by the results computed from it
+     */
+    private static final class Snapshot<Option, Count extends FieldElement<Count> & Comparable<Count>> {
+        final Key key;
+        final PreferenceMatrix<Option, Count> matrix;
+        /**
+         * Tally the counts were last confirmed against, and its version then
+         */
+        WeakReference<StreamingTally<?, ?>> tally;
+        long version;
+        /**
+         * Number of cached results using this snapshot
+         */
+        int users = 0;
+
+        Snapshot(Key key, PreferenceMatrix<Option, Count> matrix, StreamingTally<?, ?> tally, long version) {
+            this.key = key;
+            this.matrix = matrix;
+            this.tally = new WeakReference<>(tally);
+            this.version = version;
+        }
+
+        /**
+         * Whether the counts match those given, remembering the tally they came from so the next
+         * check can be skipped if it has not changed
+         * @param tally the tally the counts came from, or null
+         */
+        boolean matches(FieldMatrix<Count> other, StreamingTally<?, ?> tally, long version) {
+            if (tally!=null && this.tally.get()==tally && this.version==version) {
+                return true;
+            }
+            var counts = matrix.getData();
+            final int C = counts.getRowDimension();
+            if (other.getRowDimension()!=C || other.getColumnDimension()!=C) {
+                return false;
+            }
+            for (int i=0; i<C; i++) {
+                for (int j=0; j<C; j++) {
+                    if (!counts.getEntry(i, j).equals(other.getEntry(i, j))) {
+                        return false;
+                    }
+                }
+            }
+            if (tally!=null) {
+                this.tally = new WeakReference<>(tally);
+                this.version = version;
+            }
+            return true;
+        }
+    }
+
+    private static final class Cached<Option, Count extends FieldElement<Count> & Comparable<Count>> {
+        final Snapshot<Option, Count> snapshot;
+        final Object result;
+
+        Cached(Snapshot<Option, Count> snapshot, Object result) {
+            this.snapshot = snapshot;
+            this.result = result;
+        }
+    }
+
+    private final int maximumSize;
+    private final Map<Key, Cached<Option, Count>> entries;
+    private final Map<Key, Snapshot<Option, Count>> snapshots = new HashMap<>();
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maximumSize number of results to keep
+     */
+    public AnalysisCache(int maximumSize) {
+        if (maximumSize<1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Cached<Option, Count>> eldest) {
+                if (size()>AnalysisCache.this.maximumSize) {
+                    evictions++;
+                    release(eldest.getValue().snapshot);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * The analysis of the matrix.  This fingerprints the matrix and compares it with the cached
+     * counts on every call, and copies it when no analysis of the same counts is cached; use
+     * {@link #get(StreamingTally, Analysis)} to avoid that for a running tally.
+     * @param matrix
+     * @param analysis
+     * @return
+     */
+    public <Result> Result get(PreferenceMatrix<Option, Count> matrix, Analysis<Option, Count, Result> analysis) {
+        return get(matrix.getOptions(), matrix.fingerprint(), matrix.getData(), null, 0,
+                ()->new PreferenceMatrix<>(matrix.getOptions(), matrix.getData().copy()), analysis);
+    }
+
+    /**
+     * The analysis of the ballots counted so far by the tally.  The tally keeps its fingerprint up
+     * to date, and a hit on counts already confirmed against the tally since its last batch costs
+     * no more than the lookup.
+     * @param tally
+     * @param analysis
+     * @return
+     */
+    public <Result> Result get(StreamingTally<Option, Count> tally, Analysis<Option, Count, Result> analysis) {
+        return get(tally.options, tally.fingerprint(), tally.count, tally, tally.version(), tally::getMatrix, analysis);
+    }
+
+    /**
+     * @param counts the current counts, compared with those of a cached result
+     * @param tally the tally the counts belong to, or null
+     * @param version the tally's version
+     * @param snapshot a copy of the counts to compute from, which the cache keeps
+     */
+    @SuppressWarnings("unchecked")
+    private <Result> Result get(List<Option> options, long fingerprint, FieldMatrix<Count> counts,
+            StreamingTally<?, ?> tally, long version,
+            Supplier<PreferenceMatrix<Option, Count>> snapshot, Analysis<Option, Count, Result> analysis) {
+        var key = new Key(options, fingerprint, analysis.name);
+        Snapshot<Option, Count> shared;
+        synchronized (this) {
+            var cached = entries.get(key);
+            if (cached!=null && cached.snapshot.matches(counts, tally, version)) {
+                hits++;
+                return (Result) cached.result;
+            }
+            misses++;
+            shared = snapshots.get(key.snapshot());
+            if (shared!=null && !shared.matches(counts, tally, version)) {
+                shared = null;
+            }
+        }
+        if (shared==null) {
+            shared = new Snapshot<>(key.snapshot(), snapshot.get(), tally, version);
+        }
+        Result result = analysis.compute.apply(shared.matrix);
+        synchronized (this) {
+            shared.users++;
+            snapshots.put(shared.key, shared);
+            var replaced = entries.put(key, new Cached<>(shared, result));
+            if (replaced!=null) {
+                release(replaced.snapshot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drop a result's use of its snapshot, and the snapshot once nothing uses it
+     */
+    private void release(Snapshot<Option, Count> snapshot) {
+        if (--snapshot.users==0) {
+            snapshots.remove(snapshot.key, snapshot);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Number of distinct snapshots of counts held for the cached results
+     * @return
+     */
+    synchronized int snapshots() {
+        return snapshots.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        snapshots.clear();
+    }
+}
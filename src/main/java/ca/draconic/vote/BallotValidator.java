@@ -0,0 +1,354 @@
+package ca.draconic.vote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.Field;
+import org.apache.commons.math3.FieldElement;
+
+/**
+ * Checks raw ballots against a set of options and puts their ranks into canonical form before they
+ * are counted.  A raw ballot marks some of the options, by index, with a rank where lower numbers
+ * are more preferred.  A valid ballot has its ranks compressed to 1, 2, 3... with ties kept, and
+ * any option it does not mark is ranked last.
+ *
+ * Invalid ballots are collected along with the reason they were rejected, rather than stopping the
+ * batch.  Validators are immutable and may be shared between threads.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Option>
+ * @param <Count>
+ */
+public class BallotValidator<Option, Count extends FieldElement<Count> & Comparable<Count>> {
+
+    /**
+     * Why a ballot was rejected
+     */
+    public enum Reason {
+        /**
+         * An option index is not in the registry
+         */
+        UNKNOWN_OPTION,
+        /**
+         * An option is marked more than once
+         */
+        REPEATED_OPTION,
+        /**
+         * A rank is less than 1
+         */
+        INVALID_RANK,
+        /**
+         * Not every option is marked, and complete ballots are required
+         */
+        INCOMPLETE,
+        /**
+         * The weight is negative
+         */
+        INVALID_WEIGHT,
+        /**
+         * The record could not be decoded into a ballot
+         */
+        MALFORMED
+    }
+
+    /**
+     * A ballot as read, before validation
+     *
+     * @param <Count>
+     */
+    public static class RawBallot<Count> {
+        final int[] options;
+        final int[] ranks;
+        final Count weight;
+        /**
+         * Why the record could not be decoded, or null
+         */
+        final RuntimeException failure;
+
+        /**
+         * The arrays are not copied.
+         * @param options indices of the options marked
+         * @param ranks rank given to each option marked
+         * @param weight
+         * @throws IllegalArgumentException if the arrays differ in length
+         */
+        public RawBallot(int[] options, int[] ranks, Count weight) {
+            if (options.length!=ranks.length) {
+                throw new IllegalArgumentException("options and ranks must have the same length");
+            }
+            this.options = options;
+            this.ranks = ranks;
+            this.weight = weight;
+            this.failure = null;
+        }
+
+        private RawBallot(RuntimeException failure) {
+            this.options = new int[0];
+            this.ranks = new int[0];
+            this.weight = null;
+            this.failure = failure;
+        }
+
+        /**
+         * Stands in for a record that could not be decoded, so that it is rejected as
+         * {@link Reason#MALFORMED} in its place in the input
+         * @param failure thrown decoding the record
+         * @return
+         */
+        static <Count> RawBallot<Count> malformed(RuntimeException failure) {
+            return new RawBallot<>(failure);
+        }
+
+        public Count getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            if (failure!=null) {
+                return "RawBallot [malformed: "+failure+"]";
+            }
+            return "RawBallot [options="+Arrays.toString(options)+", ranks="+Arrays.toString(ranks)
+                    +", weight="+weight+"]";
+        }
+    }
+
+    /**
+     * A rejected ballot
+     *
+     * @param <Count>
+     */
+    public static class Rejection<Count> {
+        private final long position;
+        private final RawBallot<Count> ballot;
+        private final Reason reason;
+
+        Rejection(long position, RawBallot<Count> ballot, Reason reason) {
+            this.position = position;
+            this.ballot = ballot;
+            this.reason = reason;
+        }
+
+        /**
+         * Position of the ballot in the input, counting across batches
+         * @return
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        public RawBallot<Count> getBallot() {
+            return ballot;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        /**
+         * The exception thrown decoding a {@link Reason#MALFORMED} record
+         * @return
+         */
+        public Optional<RuntimeException> getFailure() {
+            return Optional.ofNullable(ballot.failure);
+        }
+
+        @Override
+        public String toString() {
+            return "Rejection [position="+position+", reason="+reason+", ballot="+ballot+"]";
+        }
+    }
+
+    /**
+     * The outcome of validating some ballots
+     *
+     * @param <Option>
+     * @param <Count>
+     */
+    public static class Result<Option, Count extends FieldElement<Count> & Comparable<Count>> {
+        private final List<RankedBallot<Option, Count>> ballots;
+        private final List<Rejection<Count>> rejections;
+
+        Result(List<RankedBallot<Option, Count>> ballots, List<Rejection<Count>> rejections) {
+            this.ballots = Collections.unmodifiableList(ballots);
+            this.rejections = Collections.unmodifiableList(rejections);
+        }
+
+        /**
+         * The valid ballots, in input order, sharing the validator's option registry
+         * @return
+         */
+        public List<RankedBallot<Option, Count>> getBallots() {
+            return ballots;
+        }
+
+        /**
+         * The invalid ballots, in input order
+         * @return
+         */
+        public List<Rejection<Count>> getRejections() {
+            return rejections;
+        }
+    }
+
+    final OptionRegistry<Option> options;
+    final Field<Count> field;
+    private final boolean requireComplete;
+
+    /**
+     * @param options
+     * @param field
+     * @param requireComplete reject ballots that do not mark every option, rather than ranking the
+     * options left out last
+     */
+    public BallotValidator(Collection<Option> options, Field<Count> field, boolean requireComplete) {
+        this.options = OptionRegistry.of(options);
+        this.field = field;
+        this.requireComplete = requireComplete;
+    }
+
+    /**
+     * The options, whose indices raw ballots refer to
+     * @return
+     */
+    public OptionRegistry<Option> getOptions() {
+        return options;
+    }
+
+    /**
+     * A raw ballot marking the given options.  Options not in the registry are given index -1, so
+     * the ballot is rejected when validated.
+     * @param marked
+     * @param ranks
+     * @param weight
+     * @return
+     */
+    public RawBallot<Count> raw(List<?> marked, int[] ranks, Count weight) {
+        int[] indices = new int[marked.size()];
+        for (int i=0; i<indices.length; i++) {
+            indices[i] = options.indexOf(marked.get(i));
+        }
+        return new RawBallot<>(indices, ranks, weight);
+    }
+
+    /**
+     * Validate a batch of ballots
+     * @param batch
+     * @return
+     */
+    public Result<Option, Count> validate(List<RawBallot<Count>> batch) {
+        return validate(batch, 0);
+    }
+
+    /**
+     * Validate a batch of ballots that starts at the given position in the input
+     */
+    Result<Option, Count> validate(List<RawBallot<Count>> batch, long start) {
+        var ballots = new ArrayList<RankedBallot<Option, Count>>(batch.size());
+        var rejections = new ArrayList<Rejection<Count>>();
+        new Worker().validate(batch, start, ballots, rejections);
+        return new Result<>(ballots, rejections);
+    }
+
+    /**
+     * Validate several batches in parallel.  The result lists the ballots of all the batches in
+     * order.
+     * @param batches
+     * @return
+     */
+    public Result<Option, Count> validateAll(List<? extends List<RawBallot<Count>>> batches) {
+        long[] start = new long[batches.size()];
+        for (int b=1; b<start.length; b++) {
+            start[b] = start[b-1]+batches.get(b-1).size();
+        }
+        var results = IntStream.range(0, batches.size()).parallel()
+                .mapToObj(b->validate(batches.get(b), start[b]))
+                .collect(Collectors.toList());
+        var ballots = new ArrayList<RankedBallot<Option, Count>>();
+        var rejections = new ArrayList<Rejection<Count>>();
+        for (var result : results) {
+            ballots.addAll(result.getBallots());
+            rejections.addAll(result.getRejections());
+        }
+        return new Result<>(ballots, rejections);
+    }
+
+    /**
+     * Scratch space for validating one batch at a time
+     */
+    private class Worker {
+        final BitSet marked = new BitSet(options.size());
+        final int[] sorted = new int[options.size()];
+
+        void validate(List<RawBallot<Count>> batch, long start,
+                List<RankedBallot<Option, Count>> ballots, List<Rejection<Count>> rejections) {
+            long position = start;
+            for (RawBallot<Count> raw : batch) {
+                Reason reason = check(raw);
+                if (reason==null) {
+                    ballots.add(new RankedBallot<>(options, normalise(raw), raw.weight));
+                } else {
+                    rejections.add(new Rejection<>(position, raw, reason));
+                }
+                position++;
+            }
+        }
+
+        Reason check(RawBallot<Count> raw) {
+            if (raw.failure!=null) {
+                return Reason.MALFORMED;
+            }
+            if (raw.weight.compareTo(field.getZero())<0) {
+                return Reason.INVALID_WEIGHT;
+            }
+            final int C = options.size();
+            marked.clear();
+            for (int k=0; k<raw.options.length; k++) {
+                int i = raw.options[k];
+                if (i<0 || i>=C) {
+                    return Reason.UNKNOWN_OPTION;
+                }
+                if (marked.get(i)) {
+                    return Reason.REPEATED_OPTION;
+                }
+                marked.set(i);
+                if (raw.ranks[k]<1) {
+                    return Reason.INVALID_RANK;
+                }
+            }
+            if (requireComplete && raw.options.length<C) {
+                return Reason.INCOMPLETE;
+            }
+            return null;
+        }
+
+        /**
+         * Dense ranks in registry order, with unmarked options after all the marked ones
+         */
+        int[] normalise(RawBallot<Count> raw) {
+            final int n = raw.ranks.length;
+            System.arraycopy(raw.ranks, 0, sorted, 0, n);
+            Arrays.sort(sorted, 0, n);
+            int distinct = 0;
+            for (int k=0; k<n; k++) {
+                if (distinct==0 || sorted[distinct-1]!=sorted[k]) {
+                    sorted[distinct++] = sorted[k];
+                }
+            }
+            int[] result = new int[options.size()];
+            Arrays.fill(result, distinct+1);
+            for (int k=0; k<n; k++) {
+                result[raw.options[k]] = Arrays.binarySearch(sorted, 0, distinct, raw.ranks[k])+1;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package ca.draconic.vote;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Several Condorcet methods computed together from one primitive copy of a preference matrix.
+ * The Copeland, Minimax and Borda scores and the Condorcet winner come from a single pass over the
+ * pairwise counts, and the Schulze beat paths from one run of the strongest path algorithm.
+ * Minimax measures defeats by winning votes, as {@link PreferenceMatrix#beatPaths()} does.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Option>
+ * @see PreferenceMatrix#analyse()
+ */
+public class CondorcetAnalysis<Option> {
+
+    final OptionRegistry<Option> options;
+    /**
+     * Strongest paths, row major
+     */
+    final double[] paths;
+    final int[] wins;
+    final int[] losses;
+    final double[] worstDefeat;
+    final double[] borda;
+    /**
+     * Number of options that beat each option by their beat paths
+     */
+    final int[] defeats;
+
+    /**
+     * @param options
+     * @param count pairwise counts
+     */
+    CondorcetAnalysis(OptionRegistry<Option> options, double[][] count) {
+        final int C = options.size();
+        this.options = options;
+        this.paths = new double[C*C];
+        wins = new int[C];
+        losses = new int[C];
+        worstDefeat = new double[C];
+        borda = new double[C];
+        defeats = new int[C];
+
+        // Row statistics, and the strength of the link from each option to each it beats
+        for (int i=0; i<C; i++) {
+            for (int j=i+1; j<C; j++) {
+                double preferI = count[i][j];
+                double preferJ = count[j][i];
+                borda[i] += preferI;
+                borda[j] += preferJ;
+                if (preferI>preferJ) {
+                    wins[i]++;
+                    losses[j]++;
+                    worstDefeat[j] = Math.max(worstDefeat[j], preferI);
+                    paths[i*C+j] = preferI;
+                } else if (preferJ>preferI) {
+                    wins[j]++;
+                    losses[i]++;
+                    worstDefeat[i] = Math.max(worstDefeat[i], preferJ);
+                    paths[j*C+i] = preferJ;
+                }
+            }
+        }
+
+        PreferenceMatrix.strongestPaths(paths, 0, C);
+        PreferenceMatrix.countDefeats(paths, 0, C, defeats, 0);
+    }
+
+    public OptionRegistry<Option> getOptions() {
+        return options;
+    }
+
+    /**
+     * Number of options the option beats pairwise
+     */
+    public int getWins(Option option) {
+        return wins[options.getIndex(option)];
+    }
+
+    /**
+     * Number of options that beat the option pairwise
+     */
+    public int getLosses(Option option) {
+        return losses[options.getIndex(option)];
+    }
+
+    /**
+     * Number of options the option ties with pairwise
+     */
+    public int getTies(Option option) {
+        int i = options.getIndex(option);
+        return options.size()-1-wins[i]-losses[i];
+    }
+
+    /**
+     * Copeland score: pairwise wins less pairwise losses
+     */
+    public int getCopelandScore(Option option) {
+        int i = options.getIndex(option);
+        return wins[i]-losses[i];
+    }
+
+    /**
+     * The number preferring the winner in the option's worst pairwise defeat, or 0 if it is
+     * undefeated
+     */
+    public double getWorstDefeat(Option option) {
+        return worstDefeat[options.getIndex(option)];
+    }
+
+    /**
+     * Borda score derived from the pairwise counts: the total number of times the option is
+     * preferred to another
+     */
+    public double getBordaScore(Option option) {
+        return borda[options.getIndex(option)];
+    }
+
+    /**
+     * Strength of the strongest path from a to b
+     */
+    public double getBeatPath(Option a, Option b) {
+        return paths[options.getIndex(a)*options.size()+options.getIndex(b)];
+    }
+
+    /**
+     * The option that beats every other pairwise, if there is one
+     * @return
+     */
+    public Optional<Option> getCondorcetWinner() {
+        final int C = options.size();
+        for (int i=0; i<C; i++) {
+            if (wins[i]==C-1) {
+                return Optional.of(options.get(i));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The options with the highest Copeland score
+     * @return
+     */
+    public Set<Option> getCopelandWinners() {
+        final int C = options.size();
+        int most = Integer.MIN_VALUE;
+        for (int i=0; i<C; i++) {
+            most = Math.max(most, wins[i]-losses[i]);
+        }
+        Set<Option> result = new HashSet<>();
+        for (int i=0; i<C; i++) {
+            if (wins[i]-losses[i]==most) {
+                result.add(options.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The options whose worst pairwise defeat is the least severe
+     * @return
+     */
+    public Set<Option> getMinimaxWinners() {
+        final int C = options.size();
+        double least = Double.POSITIVE_INFINITY;
+        for (int i=0; i<C; i++) {
+            least = Math.min(least, worstDefeat[i]);
+        }
+        Set<Option> result = new HashSet<>();
+        for (int i=0; i<C; i++) {
+            if (worstDefeat[i]==least) {
+                result.add(options.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The options with the highest Borda score
+     * @return
+     */
+    public Set<Option> getBordaWinners() {
+        final int C = options.size();
+        double most = Double.NEGATIVE_INFINITY;
+        for (int i=0; i<C; i++) {
+            most = Math.max(most, borda[i]);
+        }
+        Set<Option> result = new HashSet<>();
+        for (int i=0; i<C; i++) {
+            if (borda[i]==most) {
+                result.add(options.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The options that no other option beats by their beat paths
+     * @return
+     */
+    public Set<Option> getSchulzeWinners() {
+        return PreferenceMatrix.undefeated(options, defeats, 0);
+    }
+}
@@ -0,0 +1,293 @@
+package ca.draconic.vote;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.FieldElement;
+
+/**
+ * Schulze analysis of many small contests at once.  The pairwise counts of every contest are
+ * packed into one primitive array, and the strongest paths, winners and rankings of all of them
+ * are computed in one pass, in parallel across contests.  Each contest is then read through a
+ * lightweight {@link Contest} view over the shared arrays.
+ *
+ * The options of each contest are kept as a plain list.  An index for looking options up is only
+ * built for a contest the first time one is looked up by value.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Option>
+ */
+public class ContestBatch<Option> extends AbstractList<ContestBatch.Contest<Option>> implements RandomAccess {
+
+    final List<List<Option>> options;
+    /**
+     * Index of each contest's options, built on first use
+     */
+    private final AtomicReferenceArray<OptionRegistry<Option>> registries;
+    /**
+     * Start of each contest's C by C block in {@link #counts} and {@link #paths}, with the total
+     * length at the end
+     */
+    final int[] matrixOffset;
+    /**
+     * Start of each contest's options in {@link #defeats}, with the total at the end
+     */
+    final int[] optionOffset;
+    final double[] counts;
+    final double[] paths;
+    /**
+     * Number of options that beat each option by their beat paths
+     */
+    final int[] defeats;
+
+    private ContestBatch(List<List<Option>> options, double[] counts) {
+        final int n = options.size();
+        this.options = options;
+        this.registries = new AtomicReferenceArray<>(n);
+        this.counts = counts;
+        matrixOffset = new int[n+1];
+        optionOffset = new int[n+1];
+        for (int k=0; k<n; k++) {
+            int C = options.get(k).size();
+            matrixOffset[k+1] = matrixOffset[k]+C*C;
+            optionOffset[k+1] = optionOffset[k]+C;
+        }
+        paths = new double[counts.length];
+        defeats = new int[optionOffset[n]];
+        IntStream.range(0, n).parallel().forEach(this::analyse);
+    }
+
+    private void analyse(int k) {
+        final int C = options.get(k).size();
+        final int m = matrixOffset[k];
+        for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                double preferI = counts[m+i*C+j];
+                double preferJ = counts[m+j*C+i];
+                paths[m+i*C+j] = preferI>preferJ ? preferI : 0;
+            }
+        }
+        PreferenceMatrix.strongestPaths(paths, m, C);
+        PreferenceMatrix.countDefeats(paths, m, C, defeats, optionOffset[k]);
+    }
+
+    private OptionRegistry<Option> registry(int k) {
+        var registry = registries.get(k);
+        if (registry==null) {
+            registries.compareAndSet(k, null, OptionRegistry.of(options.get(k)));
+            registry = registries.get(k);
+        }
+        return registry;
+    }
+
+    @Override
+    public Contest<Option> get(int k) {
+        if (k<0 || k>=options.size()) {
+            throw new IndexOutOfBoundsException(k+" is not a valid contest");
+        }
+        return new Contest<>(this, k);
+    }
+
+    @Override
+    public int size() {
+        return options.size();
+    }
+
+    /**
+     * View of one contest in a batch
+     * @param <Option>
+     */
+    public static class Contest<Option> {
+        private final ContestBatch<Option> batch;
+        private final int k;
+
+        private Contest(ContestBatch<Option> batch, int k) {
+            this.batch = batch;
+            this.k = k;
+        }
+
+        /**
+         * The options of the contest, in index order
+         * @return
+         */
+        public List<Option> getOptions() {
+            return batch.options.get(k);
+        }
+
+        /**
+         * The index of the option
+         * @param option
+         * @return
+         * @throws NoSuchElementException if the option is not in the contest
+         */
+        public int getIndex(Option option) {
+            return batch.registry(k).getIndex(option);
+        }
+
+        public double getCount(int i, int j) {
+            return batch.counts[entry(i, j)];
+        }
+
+        /**
+         * Strength of the strongest path from option i to option j
+         */
+        public double getBeatPath(int i, int j) {
+            return batch.paths[entry(i, j)];
+        }
+
+        public double getBeatPath(Option a, Option b) {
+            return getBeatPath(getIndex(a), getIndex(b));
+        }
+
+        /**
+         * Whether option i beats option j by their beat paths
+         */
+        public boolean isWin(int i, int j) {
+            return getBeatPath(i, j)>getBeatPath(j, i);
+        }
+
+        /**
+         * The options that no other option beats by their beat paths
+         * @return
+         */
+        public Set<Option> getWinners() {
+            return PreferenceMatrix.undefeated(getOptions(), batch.defeats, batch.optionOffset[k]);
+        }
+
+        /**
+         * The options ordered by the number of options that beat them by their beat paths, those
+         * beaten by the same number grouped as a set.
+         * @return
+         */
+        public List<Set<Option>> optionsByPreference() {
+            final int C = getOptions().size();
+            final int o = batch.optionOffset[k];
+            List<Set<Option>> result = new ArrayList<>();
+            for (int place=0; place<C; place++) {
+                Set<Option> group = new HashSet<>();
+                for (int i=0; i<C; i++) {
+                    if (batch.defeats[o+i]==place) {
+                        group.add(getOptions().get(i));
+                    }
+                }
+                if (!group.isEmpty()) {
+                    result.add(group);
+                }
+            }
+            return result;
+        }
+
+        private int entry(int i, int j) {
+            final int C = getOptions().size();
+            if (i<0 || i>=C || j<0 || j>=C) {
+                throw new IndexOutOfBoundsException("("+i+", "+j+") is not a valid entry");
+            }
+            return batch.matrixOffset[k]+i*C+j;
+        }
+    }
+
+    public static <Option> Builder<Option> builder() {
+        return new Builder<>();
+    }
+
+    public static class Builder<Option> {
+        private final List<List<Option>> options = new ArrayList<>();
+        private double[] counts = new double[256];
+        private int length = 0;
+
+        private Builder() {
+        }
+
+        /**
+         * Add a contest given its pairwise counts, row major
+         * @param options
+         * @param count {@code count[i*C+j]} is the number preferring option i to option j
+         * @return
+         * @throws IllegalArgumentException if an option is repeated
+         */
+        public Builder<Option> add(Collection<Option> options, double[] count) {
+            List<Option> list = options instanceof OptionRegistry
+                    ? (OptionRegistry<Option>) options
+                    : unique(List.copyOf(options));
+            final int C = list.size();
+            if (count.length!=C*C) {
+                throw new IllegalArgumentException("Matrix must have dimensions equal to number of options");
+            }
+            for (int i=0; i<C; i++) {
+                if (count[i*C+i]!=0) {
+                    throw new IllegalArgumentException("Preference matrix must be 0 on the diagonal");
+                }
+            }
+            if (length+count.length>counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(counts.length*2, length+count.length));
+            }
+            System.arraycopy(count, 0, counts, length, count.length);
+            length += count.length;
+            this.options.add(list);
+            return this;
+        }
+
+        /**
+         * Checks the options pairwise, which for a small contest costs less than hashing them and
+         * no more than copying its counts.
+         */
+        private static <Option> List<Option> unique(List<Option> options) {
+            final int C = options.size();
+            for (int i=0; i<C; i++) {
+                for (int j=i+1; j<C; j++) {
+                    if (options.get(i).equals(options.get(j))) {
+                        throw new IllegalArgumentException("Options must be unique");
+                    }
+                }
+            }
+            return options;
+        }
+
+        /**
+         * Add a contest given its pairwise counts
+         * @param options
+         * @param count {@code count[i][j]} is the number preferring option i to option j
+         * @return
+         */
+        public Builder<Option> add(Collection<Option> options, int[][] count) {
+            for (int[] row : count) {
+                if (row.length!=count.length) {
+                    throw new IllegalArgumentException("Matrix must have dimensions equal to number of options");
+                }
+            }
+            return add(options, Arrays.stream(count)
+                    .flatMapToDouble(row->Arrays.stream(row).asDoubleStream())
+                    .toArray());
+        }
+
+        /**
+         * Add a contest given its preference matrix
+         * @param matrix
+         * @return
+         */
+        public <Count extends FieldElement<Count> & Comparable<Count>>
+        Builder<Option> add(PreferenceMatrix<Option, Count> matrix) {
+            return add(matrix.getOptions(), Arrays.stream(matrix.toDoubleArray())
+                    .flatMapToDouble(Arrays::stream)
+                    .toArray());
+        }
+
+        /**
+         * Analyse all of the contests added
+         * @return
+         */
+        public ContestBatch<Option> build() {
+            return new ContestBatch<>(List.copyOf(options), Arrays.copyOf(counts, length));
+        }
+    }
+}
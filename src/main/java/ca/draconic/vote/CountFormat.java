@@ -0,0 +1,71 @@
+package ca.draconic.vote;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+
+import org.apache.commons.math3.FieldElement;
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.fraction.Fraction;
+
+/**
+ * Binary encoding of counts, for saving tallies
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Count>
+ */
+public interface CountFormat<Count extends FieldElement<Count> & Comparable<Count>> {
+
+    public void write(DataOutput out, Count count) throws IOException;
+
+    public Count read(DataInput in) throws IOException;
+
+    /**
+     * Writes {@link Fraction}s as an int numerator and denominator
+     */
+    public static final CountFormat<Fraction> FRACTION = new CountFormat<>() {
+        @Override
+        public void write(DataOutput out, Fraction count) throws IOException {
+            out.writeInt(count.getNumerator());
+            out.writeInt(count.getDenominator());
+        }
+
+        @Override
+        public Fraction read(DataInput in) throws IOException {
+            int numerator = in.readInt();
+            int denominator = in.readInt();
+            return new Fraction(numerator, denominator);
+        }
+    };
+
+    /**
+     * Writes {@link BigFraction}s as the two's complement bytes of the numerator and denominator
+     */
+    public static final CountFormat<BigFraction> BIG_FRACTION = new CountFormat<>() {
+        @Override
+        public void write(DataOutput out, BigFraction count) throws IOException {
+            writeBytes(out, count.getNumerator().toByteArray());
+            writeBytes(out, count.getDenominator().toByteArray());
+        }
+
+        @Override
+        public BigFraction read(DataInput in) throws IOException {
+            var numerator = new BigInteger(readBytes(in));
+            var denominator = new BigInteger(readBytes(in));
+            return new BigFraction(numerator, denominator);
+        }
+
+        private void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+
+        private byte[] readBytes(DataInput in) throws IOException {
+            byte[] bytes = new byte[in.readUnsignedShort()];
+            in.readFully(bytes);
+            return bytes;
+        }
+    };
+}
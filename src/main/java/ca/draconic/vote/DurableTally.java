@@ -0,0 +1,348 @@
+package ca.draconic.vote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import org.apache.commons.math3.Field;
+import org.apache.commons.math3.FieldElement;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+/**
+ * A running tally that survives a crash.  Each batch's changes to the pairwise counts are appended
+ * to a log before the batch is considered counted, and every few batches the whole count matrix is
+ * written to a checkpoint and the log cleared.  Reopening the directory loads the checkpoint and
+ * replays only the log written since.
+ *
+ * The tally records the offset in the ballot source reached by each batch, so after a restart the
+ * source can be resumed from {@link #getOffset()}.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Option>
+ * @param <Count>
+ */
+public class DurableTally<Option, Count extends FieldElement<Count> & Comparable<Count>> implements Closeable {
+
+    static final String CHECKPOINT = "checkpoint";
+    static final String LOG = "log";
+    static final int MAGIC = 0x564f5445;
+    static final int VERSION = 2;
+
+    final OptionRegistry<Option> options;
+    final Field<Count> field;
+    final CountFormat<Count> format;
+    final Path directory;
+    final int checkpointInterval;
+    /**
+     * Stable hash of the options, which each log entry records
+     */
+    final long optionsDigest;
+
+    private final FieldMatrix<Count> count;
+    private long offset = 0;
+    private int sinceCheckpoint = 0;
+    private final FileChannel log;
+
+    private DurableTally(Path directory, Collection<Option> options, Field<Count> field,
+            CountFormat<Count> format, int checkpointInterval) throws IOException {
+        if (checkpointInterval<1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.directory = directory;
+        this.options = OptionRegistry.of(options);
+        this.field = field;
+        this.format = format;
+        this.checkpointInterval = checkpointInterval;
+        this.optionsDigest = digest(this.options);
+        final int C = this.options.size();
+        this.count = new Array2DRowFieldMatrix<>(field, C, C);
+
+        Files.createDirectories(directory);
+        readCheckpoint();
+        log = FileChannel.open(directory.resolve(LOG),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            replay();
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open the tally saved in the given directory, or start a new one if there is none
+     * @param directory
+     * @param options the same options, in the same order, as the saved tally
+     * @param field
+     * @param format encoding for the counts
+     * @param checkpointInterval number of batches between checkpoints
+     * @return
+     * @throws IOException if the saved tally can not be read, or was saved for other options
+     */
+    public static <Option, Count extends FieldElement<Count> & Comparable<Count>>
+    DurableTally<Option, Count> open(Path directory, Collection<Option> options, Field<Count> field,
+            CountFormat<Count> format, int checkpointInterval) throws IOException {
+        return new DurableTally<>(directory, options, field, format, checkpointInterval);
+    }
+
+    /**
+     * Count a batch of ballots, taking the offset to be one past the last ballot in the batch
+     * @param batch
+     * @throws IOException
+     */
+    public <Ballot extends Ranking<Option> & WeightedBallot<Count>>
+    void add(Collection<Ballot> batch) throws IOException {
+        add(batch, offset+batch.size());
+    }
+
+    /**
+     * Count a batch of ballots.  Once this returns the batch is recorded durably.
+     * @param batch
+     * @param offset position in the ballot source after this batch
+     * @throws IOException
+     * @throws IllegalArgumentException if the offset is not after that of the previous batch
+     */
+    public <Ballot extends Ranking<Option> & WeightedBallot<Count>>
+    void add(Collection<Ballot> batch, long offset) throws IOException {
+        if (batch.isEmpty() && offset==this.offset) {
+            return;
+        }
+        if (offset<=this.offset) {
+            throw new IllegalArgumentException("Offset must increase with each batch");
+        }
+        var delta = PreferenceMatrix.weightedPreferential(options, batch, field).getData();
+        append(delta, offset);
+        apply(delta);
+        this.offset = offset;
+        if (++sinceCheckpoint>=checkpointInterval) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Position in the ballot source after the last batch counted
+     * @return
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Preference matrix of the ballots counted so far
+     * @return
+     */
+    public PreferenceMatrix<Option, Count> getMatrix() {
+        return new PreferenceMatrix<>(options, count.copy());
+    }
+
+    /**
+     * Write the counts to a new checkpoint and clear the log
+     * @throws IOException
+     */
+    public void checkpoint() throws IOException {
+        final int C = options.size();
+        Path temporary = directory.resolve(CHECKPOINT+".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(C);
+            for (Option option : options) {
+                out.writeUTF(option.toString());
+            }
+            out.writeLong(offset);
+            for (int i=0; i<C; i++) {
+                for (int j=0; j<C; j++) {
+                    format.write(out, count.getEntry(i, j));
+                }
+            }
+        }
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // Entries left behind if this is interrupted are skipped on replay by their offsets
+        log.truncate(0);
+        log.force(true);
+        sinceCheckpoint = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private void apply(FieldMatrix<Count> delta) {
+        final int C = options.size();
+        for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                count.addToEntry(i, j, delta.getEntry(i, j));
+            }
+        }
+    }
+
+    /**
+     * Log entry: length, options digest, offset, number of nonzero entries, (row, column, count)...,
+     * CRC32
+     */
+    private void append(FieldMatrix<Count> delta, long offset) throws IOException {
+        final int C = options.size();
+        final Count zero = field.getZero();
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeLong(optionsDigest);
+        out.writeLong(offset);
+        int entries = 0;
+        for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                if (!delta.getEntry(i, j).equals(zero)) {
+                    entries++;
+                }
+            }
+        }
+        out.writeInt(entries);
+        for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                Count value = delta.getEntry(i, j);
+                if (!value.equals(zero)) {
+                    out.writeInt(i);
+                    out.writeInt(j);
+                    format.write(out, value);
+                }
+            }
+        }
+        out.flush();
+        byte[] body = bytes.toByteArray();
+        var crc = new CRC32();
+        crc.update(body);
+        var buffer = ByteBuffer.allocate(body.length+12);
+        buffer.putInt(body.length).put(body).putLong(crc.getValue()).flip();
+        log.position(log.size());
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        log.force(false);
+    }
+
+    private void readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT);
+        if (!Files.exists(file)) {
+            return;
+        }
+        final int C = options.size();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt()!=MAGIC || in.readInt()!=VERSION) {
+                throw new IOException("Not a tally checkpoint: "+file);
+            }
+            int saved = in.readInt();
+            var names = new ArrayList<String>(saved);
+            for (int i=0; i<saved; i++) {
+                names.add(in.readUTF());
+            }
+            if (!names.equals(names(options))) {
+                throw new IOException("Checkpoint was saved for options "+names+", not "+options);
+            }
+            offset = in.readLong();
+            for (int i=0; i<C; i++) {
+                for (int j=0; j<C; j++) {
+                    count.setEntry(i, j, format.read(in));
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply the log entries after the checkpoint, dropping any torn or corrupt entry at the end
+     */
+    private void replay() throws IOException {
+        var in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(log.position(0))));
+        long good = 0;
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length<20 || length>log.size()) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                long expected = in.readLong();
+                var crc = new CRC32();
+                crc.update(body);
+                if (crc.getValue()!=expected) {
+                    break;
+                }
+                var entry = new DataInputStream(new ByteArrayInputStream(body));
+                if (entry.readLong()!=optionsDigest) {
+                    throw new IOException("Log was written for options other than "+options);
+                }
+                long entryOffset = entry.readLong();
+                int entries = entry.readInt();
+                // Entries at or before the checkpoint's offset are already in it
+                if (entryOffset>offset) {
+                    for (int n=0; n<entries; n++) {
+                        int i = entry.readInt();
+                        int j = entry.readInt();
+                        if (i<0 || i>=options.size() || j<0 || j>=options.size()) {
+                            throw new IOException("Log entry refers to option outside the tally");
+                        }
+                        count.addToEntry(i, j, format.read(entry));
+                    }
+                    offset = entryOffset;
+                }
+                good += 4+length+8;
+                sinceCheckpoint++;
+            }
+        } catch (EOFException ex) {
+            // Torn entry at the end of the log
+        }
+        log.truncate(good);
+        log.position(good);
+    }
+
+    private static List<String> names(List<?> options) {
+        return options.stream().map(Object::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * First 8 bytes of the SHA-256 of the options' names, so it is the same in every JVM
+     */
+    static long digest(List<?> options) {
+        try {
+            var sha = MessageDigest.getInstance("SHA-256");
+            var out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), sha));
+            out.writeInt(options.size());
+            for (String name : names(options)) {
+                out.writeUTF(name);
+            }
+            out.flush();
+            return ByteBuffer.wrap(sha.digest()).getLong();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ca.draconic.vote;
+
+import org.apache.commons.math3.FieldElement;
+import org.apache.commons.math3.linear.AbstractFieldMatrix;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+/**
+ * A read only square matrix computed on access from another.  Changes to the underlying matrix
+ * show through.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Count>
+ */
+abstract class FieldMatrixView<Count extends FieldElement<Count>> extends AbstractFieldMatrix<Count> {
+
+    final FieldMatrix<Count> base;
+
+    FieldMatrixView(FieldMatrix<Count> base) {
+        super(base.getField());
+        this.base = base;
+    }
+
+    @Override
+    public FieldMatrix<Count> createMatrix(int rowDimension, int columnDimension) {
+        return new Array2DRowFieldMatrix<>(getField(), rowDimension, columnDimension);
+    }
+
+    @Override
+    public FieldMatrix<Count> copy() {
+        return new Array2DRowFieldMatrix<>(getField(), getData(), false);
+    }
+
+    @Override
+    public void setEntry(int row, int column, Count value) {
+        throw new UnsupportedOperationException("Matrix view is read only");
+    }
+
+    @Override
+    public void addToEntry(int row, int column, Count increment) {
+        throw new UnsupportedOperationException("Matrix view is read only");
+    }
+
+    @Override
+    public void multiplyEntry(int row, int column, Count factor) {
+        throw new UnsupportedOperationException("Matrix view is read only");
+    }
+
+    @Override
+    public int getRowDimension() {
+        return getColumnDimension();
+    }
+
+    /**
+     * Each entry is the margin of the row over the column
+     */
+    static class Margins<Count extends FieldElement<Count>> extends FieldMatrixView<Count> {
+        Margins(FieldMatrix<Count> base) {
+            super(base);
+        }
+
+        @Override
+        public Count getEntry(int row, int column) {
+            return base.getEntry(row, column).subtract(base.getEntry(column, row));
+        }
+
+        @Override
+        public int getColumnDimension() {
+            return base.getColumnDimension();
+        }
+    }
+
+    static class Transpose<Count extends FieldElement<Count>> extends FieldMatrixView<Count> {
+        Transpose(FieldMatrix<Count> base) {
+            super(base);
+        }
+
+        @Override
+        public Count getEntry(int row, int column) {
+            return base.getEntry(column, row);
+        }
+
+        @Override
+        public int getColumnDimension() {
+            return base.getRowDimension();
+        }
+    }
+
+    /**
+     * The rows and columns of the given indices
+     */
+    static class Subset<Count extends FieldElement<Count>> extends FieldMatrixView<Count> {
+        final int[] indices;
+
+        Subset(FieldMatrix<Count> base, int[] indices) {
+            super(base);
+            this.indices = indices;
+        }
+
+        @Override
+        public Count getEntry(int row, int column) {
+            checkRowIndex(row);
+            checkColumnIndex(column);
+            return base.getEntry(indices[row], indices[column]);
+        }
+
+        @Override
+        public int getColumnDimension() {
+            return indices.length;
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package ca.draconic.vote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.commons.math3.FieldElement;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+import ca.draconic.vote.BallotValidator.RawBallot;
+import ca.draconic.vote.BallotValidator.Reason;
+import ca.draconic.vote.BallotValidator.Rejection;
+
+/**
+ * Tallies a stream of records as a pipeline of concurrent stages: reading the source, decoding
+ * each record to a {@link RawBallot}, {@link BallotValidator validating} it, merging ballots with
+ * identical rankings, and counting them into a preference matrix.  Each stage runs on its own
+ * thread and passes batches to the next through a bounded queue, so a slow stage holds back the
+ * ones before it and memory use does not depend on the size of the input.
+ *
+ * A record the decoder throws a {@link RuntimeException} on is rejected as
+ * {@link Reason#MALFORMED} at its position in the input, like any other invalid ballot.  Only a
+ * failure of the source itself, or of a later stage, stops the run.
+ *
+ * Stage threads come from a {@link ThreadFactory}, so callers running on Java 21 or later can pass
+ * a virtual thread factory.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Record>
+ * @param <Option>
+ * @param <Count>
+ */
+public class IngestPipeline<Record, Option, Count extends FieldElement<Count> & Comparable<Count>> {
+
+    /**
+     * Marks the end of the input on a queue
+     */
+    private static final List<Object> END = new ArrayList<>();
+
+    /**
+     * Throughput of one stage of a run
+     */
+    public static class Stage {
+        private final String name;
+        private volatile long items = 0;
+        private volatile long batches = 0;
+        private volatile long busyNanos = 0;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Number of items the stage has taken in
+         * @return
+         */
+        public long getItems() {
+            return items;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * Time spent working, not counting time waiting on the queues
+         * @return
+         */
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+
+        /**
+         * Items per second of busy time
+         * @return
+         */
+        public double getThroughput() {
+            return busyNanos==0 ? 0 : items*1e9/busyNanos;
+        }
+
+        // Each stage is only updated by its own thread
+        void record(int n, long nanos) {
+            items += n;
+            batches++;
+            busyNanos += nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Stage [name="+name+", items="+items+", batches="+batches+", throughput="+getThroughput()+"]";
+        }
+    }
+
+    /**
+     * The outcome of a run
+     *
+     * @param <Option>
+     * @param <Count>
+     */
+    public static class Result<Option, Count extends FieldElement<Count> & Comparable<Count>> {
+        private final PreferenceMatrix<Option, Count> matrix;
+        private final Map<Reason, Long> rejections;
+        private final List<Stage> stages;
+
+        Result(PreferenceMatrix<Option, Count> matrix, Map<Reason, Long> rejections, List<Stage> stages) {
+            this.matrix = matrix;
+            this.rejections = Collections.unmodifiableMap(rejections);
+            this.stages = Collections.unmodifiableList(stages);
+        }
+
+        /**
+         * Preference matrix of the valid ballots
+         * @return
+         */
+        public PreferenceMatrix<Option, Count> getMatrix() {
+            return matrix;
+        }
+
+        /**
+         * Number of ballots rejected for each reason
+         * @return
+         */
+        public Map<Reason, Long> getRejections() {
+            return rejections;
+        }
+
+        /**
+         * The stages in pipeline order
+         * @return
+         */
+        public List<Stage> getStages() {
+            return stages;
+        }
+    }
+
+    final BallotValidator<Option, Count> validator;
+    final Function<? super Record, RawBallot<Count>> decoder;
+    final Consumer<? super Rejection<Count>> onRejection;
+    final ThreadFactory threadFactory;
+    final int batchSize;
+    final int queueCapacity;
+
+    private IngestPipeline(Builder<Record, Option, Count> builder) {
+        this.validator = builder.validator;
+        this.decoder = builder.decoder;
+        this.onRejection = builder.onRejection;
+        this.threadFactory = builder.threadFactory;
+        this.batchSize = builder.batchSize;
+        this.queueCapacity = builder.queueCapacity;
+    }
+
+    /**
+     * Tally every record of the source.  Blocks until the last batch is counted.  If a stage
+     * fails, the other stages are stopped and its exception is rethrown.
+     * @param source
+     * @return
+     * @throws InterruptedException if interrupted while waiting, after stopping the stages and
+     * waiting for them to finish
+     */
+    public Result<Option, Count> run(Iterator<? extends Record> source) throws InterruptedException {
+        final OptionRegistry<Option> options = validator.getOptions();
+        final int C = options.size();
+        final FieldMatrix<Count> count = new Array2DRowFieldMatrix<>(validator.field, C, C);
+        final Map<Reason, Long> rejections = new EnumMap<>(Reason.class);
+
+        var read = new Stage("read");
+        var decode = new Stage("decode");
+        var validate = new Stage("validate");
+        var group = new Stage("group");
+        var tally = new Stage("tally");
+
+        BlockingQueue<List<Record>> records = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<List<RawBallot<Count>>> raw = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<List<RankedBallot<Option, Count>>> valid = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<List<RankedBallot<Option, Count>>> grouped = new ArrayBlockingQueue<>(queueCapacity);
+
+        long[] position = {0};
+        List<Runnable> tasks = List.of(
+                ()->read(source, records, read),
+                ()->transform(records, raw, decode, this::decode),
+                ()->transform(raw, valid, validate, batch->{
+                    var result = validator.validate(batch, position[0]);
+                    position[0] += batch.size();
+                    for (var rejection : result.getRejections()) {
+                        rejections.merge(rejection.getReason(), 1L, Long::sum);
+                        onRejection.accept(rejection);
+                    }
+                    return result.getBallots();
+                }),
+                ()->transform(valid, grouped, group, this::group),
+                ()->transform(grouped, null, tally, batch->{
+                    for (var ballot : batch) {
+                        final int[] ranks = ballot.ranks;
+                        for (int i=0; i<C; i++) {
+                            for (int j=0; j<C; j++) {
+                                if (ranks[i]<ranks[j]) {
+                                    count.addToEntry(i, j, ballot.getWeight());
+                                }
+                            }
+                        }
+                    }
+                    return List.of();
+                }));
+
+        var failure = new AtomicReference<Throwable>();
+        var threads = new ArrayList<Thread>(tasks.size());
+        // No stage runs until every thread has started, as interrupting a thread that has not
+        // started yet may have no effect, and a stage that missed it would block forever
+        var started = new CountDownLatch(1);
+        for (Runnable task : tasks) {
+            threads.add(threadFactory.newThread(()->{
+                try {
+                    started.await();
+                    task.run();
+                } catch (Throwable e) {
+                    if (failure.compareAndSet(null, e)) {
+                        threads.forEach(Thread::interrupt);
+                    }
+                }
+            }));
+        }
+        try {
+            threads.forEach(Thread::start);
+        } catch (RuntimeException | Error e) {
+            threads.forEach(Thread::interrupt);
+            throw e;
+        }
+        started.countDown();
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            threads.forEach(Thread::interrupt);
+            joinUninterruptibly(threads);
+            throw e;
+        }
+
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e!=null) {
+            throw new IllegalStateException("Ingest stage failed", e);
+        }
+        return new Result<>(new PreferenceMatrix<>(options, count), rejections,
+                List.of(read, decode, validate, group, tally));
+    }
+
+    /**
+     * Wait for the stages to stop after they have been interrupted, so none outlives the run
+     */
+    private static void joinUninterruptibly(List<Thread> threads) {
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    // Already stopping
+                }
+            }
+        }
+    }
+
+    private void read(Iterator<? extends Record> source, BlockingQueue<List<Record>> out, Stage stage) {
+        while (true) {
+            long start = System.nanoTime();
+            List<Record> batch = new ArrayList<>(batchSize);
+            while (batch.size()<batchSize && source.hasNext()) {
+                batch.add(source.next());
+            }
+            stage.record(batch.size(), System.nanoTime()-start);
+            if (!batch.isEmpty()) {
+                put(out, batch);
+            }
+            if (batch.size()<batchSize) {
+                putEnd(out);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take batches from one queue and put the transformed batches on the next, until the end of
+     * the input.  The last stage has no output queue.
+     */
+    private <In, Out> void transform(BlockingQueue<List<In>> in, BlockingQueue<List<Out>> out, Stage stage,
+            Function<List<In>, List<Out>> step) {
+        while (true) {
+            List<In> batch = take(in);
+            if (batch==END) {
+                if (out!=null) {
+                    putEnd(out);
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            List<Out> result = step.apply(batch);
+            stage.record(batch.size(), System.nanoTime()-start);
+            if (!result.isEmpty()) {
+                put(out, result);
+            }
+        }
+    }
+
+    private List<RawBallot<Count>> decode(List<Record> batch) {
+        var result = new ArrayList<RawBallot<Count>>(batch.size());
+        for (Record record : batch) {
+            RawBallot<Count> ballot;
+            try {
+                ballot = decoder.apply(record);
+            } catch (RuntimeException e) {
+                ballot = RawBallot.malformed(e);
+            }
+            result.add(ballot);
+        }
+        return result;
+    }
+
+    /**
+     * Merge the ballots of a batch that rank the options the same way, summing their weights
+     */
+    private List<RankedBallot<Option, Count>> group(List<RankedBallot<Option, Count>> batch) {
+        var merged = new HashMap<RankKey, Count>();
+        for (var ballot : batch) {
+            merged.merge(new RankKey(ballot.ranks), ballot.getWeight(), Count::add);
+        }
+        var result = new ArrayList<RankedBallot<Option, Count>>(merged.size());
+        for (var entry : merged.entrySet()) {
+            result.add(new RankedBallot<>(validator.getOptions(), entry.getKey().ranks, entry.getValue()));
+        }
+        return result;
+    }
+
+    private static final class RankKey {
+        final int[] ranks;
+        final int hash;
+
+        RankKey(int[] ranks) {
+            this.ranks = ranks;
+            this.hash = Arrays.hashCode(ranks);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof RankKey && Arrays.equals(ranks, ((RankKey) obj).ranks);
+        }
+    }
+
+    private static <T> void put(BlockingQueue<List<T>> queue, List<T> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Ingest stage interrupted", e);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> void putEnd(BlockingQueue<List<T>> queue) {
+        put(queue, (List) END);
+    }
+
+    private static <T> List<T> take(BlockingQueue<List<T>> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Ingest stage interrupted", e);
+        }
+    }
+
+    /**
+     * @param validator checks the decoded ballots and gives the options of the tally
+     * @param decoder turns a record into a raw ballot, throwing a {@link RuntimeException} if it
+     * is malformed
+     * @return
+     */
+    public static <Record, Option, Count extends FieldElement<Count> & Comparable<Count>>
+    Builder<Record, Option, Count> builder(BallotValidator<Option, Count> validator,
+            Function<? super Record, RawBallot<Count>> decoder) {
+        return new Builder<>(validator, decoder);
+    }
+
+    public static class Builder<Record, Option, Count extends FieldElement<Count> & Comparable<Count>> {
+        private final BallotValidator<Option, Count> validator;
+        private final Function<? super Record, RawBallot<Count>> decoder;
+        private Consumer<? super Rejection<Count>> onRejection = rejection->{};
+        private ThreadFactory threadFactory = Thread::new;
+        private int batchSize = 1024;
+        private int queueCapacity = 4;
+
+        private Builder(BallotValidator<Option, Count> validator, Function<? super Record, RawBallot<Count>> decoder) {
+            this.validator = validator;
+            this.decoder = decoder;
+        }
+
+        /**
+         * Called from the validation stage with each rejected ballot
+         * @param onRejection
+         * @return
+         */
+        public Builder<Record, Option, Count> onRejection(Consumer<? super Rejection<Count>> onRejection) {
+            this.onRejection = onRejection;
+            return this;
+        }
+
+        /**
+         * Creates the thread of each stage
+         * @param threadFactory
+         * @return
+         */
+        public Builder<Record, Option, Count> threadFactory(ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+            return this;
+        }
+
+        /**
+         * Number of records read into each batch
+         * @param batchSize
+         * @return
+         */
+        public Builder<Record, Option, Count> batchSize(int batchSize) {
+            if (batchSize<1) {
+                throw new IllegalArgumentException("Batch size must be positive");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Number of batches each queue between stages can hold
+         * @param queueCapacity
+         * @return
+         */
+        public Builder<Record, Option, Count> queueCapacity(int queueCapacity) {
+            if (queueCapacity<1) {
+                throw new IllegalArgumentException("Queue capacity must be positive");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public IngestPipeline<Record, Option, Count> build() {
+            return new IngestPipeline<>(this);
+        }
+    }
+}
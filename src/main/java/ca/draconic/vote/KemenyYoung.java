@@ -0,0 +1,377 @@
+package ca.draconic.vote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.FieldElement;
+
+/**
+ * Finds the Kemeny-Young ranking of a preference matrix: the ranking that agrees with the most
+ * pairwise preferences.
+ *
+ * The options are first split into the strongly connected components of the majority graph.  Every
+ * member of an earlier component beats every member of a later one, so some optimal ranking keeps
+ * the components in that order and each can be solved alone.  Each component is then solved by a
+ * branch and bound search over ranking prefixes, split across a {@link ForkJoinPool}.  A prefix is
+ * pruned when its cost plus the smaller side of every pairwise contest not yet decided is no better
+ * than the best ranking found, or when the same set of options has already been ranked more
+ * cheaply.
+ *
+ * The search is exponential in the size of the largest component.  Contests close to a consistent
+ * order, as real elections usually are, are solved in milliseconds with 25 options.  Contests
+ * with no structure at all, such as uniformly random tournaments, can take seconds at 20 options
+ * and tens of seconds at 22, growing several times over with each option beyond that.
+ *
+ * When several rankings are optimal, which one is returned is unspecified.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ */
+public class KemenyYoung {
+
+    /**
+     * Largest component that can be solved
+     */
+    public static final int MAX_COMPONENT = 31;
+
+    /**
+     * Prefix depth to which the search is split into parallel tasks
+     */
+    static final int SPLIT_DEPTH = 2;
+
+    /**
+     * Most slots in the table of ranked option sets remembered for pruning, 8 bytes each
+     */
+    static final int MEMO_SIZE = 1<<20;
+
+    private KemenyYoung() {
+    }
+
+    /**
+     * The Kemeny-Young ranking of the options, searched in the common pool
+     * @param matrix
+     * @return options from most to least preferred
+     */
+    public static <Option, Count extends FieldElement<Count> & Comparable<Count>>
+    List<Option> ranking(PreferenceMatrix<Option, Count> matrix) {
+        return ranking(matrix, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * The Kemeny-Young ranking of the options
+     * @param matrix
+     * @param pool
+     * @return options from most to least preferred
+     * @throws IllegalArgumentException if a strongly connected component has more than
+     *   {@link #MAX_COMPONENT} options
+     */
+    public static <Option, Count extends FieldElement<Count> & Comparable<Count>>
+    List<Option> ranking(PreferenceMatrix<Option, Count> matrix, ForkJoinPool pool) {
+        final double[][] d = matrix.toDoubleArray();
+        List<Option> result = new ArrayList<>(d.length);
+        for (int[] component : components(d)) {
+            for (int i : solve(d, component, pool)) {
+                result.add(matrix.getOption(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Total of the pairwise preferences agreeing with the ranking
+     * @param matrix
+     * @param ranking
+     * @return
+     */
+    public static <Option, Count extends FieldElement<Count> & Comparable<Count>>
+    double score(PreferenceMatrix<Option, Count> matrix, List<Option> ranking) {
+        final double[][] d = matrix.toDoubleArray();
+        int[] order = ranking.stream().mapToInt(matrix::getIndex).toArray();
+        double score = 0;
+        for (int a=0; a<order.length; a++) {
+            for (int b=a+1; b<order.length; b++) {
+                score += d[order[a]][order[b]];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Strongly connected components of the graph with an edge from i to j wherever i is not
+     * beaten by j, in ranking order.
+     */
+    static List<int[]> components(double[][] d) {
+        final int C = d.length;
+        boolean[][] reach = new boolean[C][C];
+        for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                reach[i][j] = i==j || d[i][j]>=d[j][i];
+            }
+        }
+        for (int k=0; k<C; k++) {
+            for (int i=0; i<C; i++) {
+                if (reach[i][k]) {
+                    for (int j=0; j<C; j++) {
+                        reach[i][j] |= reach[k][j];
+                    }
+                }
+            }
+        }
+        // Every pair is joined one way or the other, so the components form a chain and the
+        // earlier a component, the more options it reaches
+        int[] reached = new int[C];
+        for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                if (reach[i][j]) {
+                    reached[i]++;
+                }
+            }
+        }
+        return IntStream.range(0, C).boxed()
+            .collect(Collectors.groupingBy(i->-reached[i]))
+            .entrySet().stream()
+            .sorted(Comparator.comparing(e->e.getKey()))
+            .map(e->e.getValue().stream().mapToInt(Integer::intValue).toArray())
+            .collect(Collectors.toList());
+    }
+
+    static int[] solve(double[][] d, int[] component, ForkJoinPool pool) {
+        final int n = component.length;
+        if (n<=2) {
+            return component;
+        }
+        if (n>MAX_COMPONENT) {
+            throw new IllegalArgumentException("Cannot rank "+n+" mutually cyclic options");
+        }
+        // cost[a][b] is the cost of ranking a above b: the preferences for b over a
+        double[][] cost = new double[n][n];
+        double lowerBound = 0;
+        for (int a=0; a<n; a++) {
+            for (int b=0; b<n; b++) {
+                cost[a][b] = d[component[b]][component[a]];
+            }
+        }
+        for (int a=0; a<n; a++) {
+            for (int b=a+1; b<n; b++) {
+                lowerBound += Math.min(cost[a][b], cost[b][a]);
+            }
+        }
+
+        var search = new Search(cost);
+        search.offer(search.heuristic());
+        pool.invoke(search.new Branch(new int[0], 0, 0, lowerBound));
+
+        return Arrays.stream(search.best)
+            .map(i->component[i])
+            .toArray();
+    }
+
+    static class Search {
+        final double[][] cost;
+        final int n;
+        /**
+         * Direct mapped table of the cheapest known cost of ranking a set of options first.  Each
+         * slot packs the set's bit mask with its cost as a float rounded up, so a race can never
+         * pair a set with another's cost, and a rounded cost can only prune less.  A set that
+         * collides with another replaces it.
+         */
+        final AtomicLongArray memo;
+        final int memoBits;
+
+        volatile double bestCost = Double.POSITIVE_INFINITY;
+        int[] best;
+
+        Search(double[][] cost) {
+            this.cost = cost;
+            this.n = cost.length;
+            // There are only 2^n sets to remember
+            this.memoBits = Math.min(Integer.numberOfTrailingZeros(MEMO_SIZE), n+1);
+            this.memo = new AtomicLongArray(1<<memoBits);
+        }
+
+        double cost(int[] order) {
+            double total = 0;
+            for (int a=0; a<order.length; a++) {
+                for (int b=a+1; b<order.length; b++) {
+                    total += cost[order[a]][order[b]];
+                }
+            }
+            return total;
+        }
+
+        synchronized void offer(int[] order) {
+            double total = cost(order);
+            if (total<bestCost) {
+                best = order;
+                bestCost = total;
+            }
+        }
+
+        /**
+         * Order by fewest defeats, then improve by moving single options while that helps
+         */
+        int[] heuristic() {
+            double[] defeats = new double[n];
+            for (int a=0; a<n; a++) {
+                for (int b=0; b<n; b++) {
+                    defeats[a] += cost[a][b];
+                }
+            }
+            int[] order = IntStream.range(0, n).boxed()
+                .sorted(Comparator.comparingDouble(a->defeats[a]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int from=0; from<n; from++) {
+                    int x = order[from];
+                    // Change in cost from moving x to each other position
+                    double delta = 0;
+                    double bestDelta = 0;
+                    int bestTo = from;
+                    for (int to=from-1; to>=0; to--) {
+                        delta += cost[x][order[to]]-cost[order[to]][x];
+                        if (delta<bestDelta) {
+                            bestDelta = delta;
+                            bestTo = to;
+                        }
+                    }
+                    delta = 0;
+                    for (int to=from+1; to<n; to++) {
+                        delta += cost[order[to]][x]-cost[x][order[to]];
+                        if (delta<bestDelta) {
+                            bestDelta = delta;
+                            bestTo = to;
+                        }
+                    }
+                    if (bestTo!=from) {
+                        if (bestTo<from) {
+                            System.arraycopy(order, bestTo, order, bestTo+1, from-bestTo);
+                        } else {
+                            System.arraycopy(order, from+1, order, from, bestTo-from);
+                        }
+                        order[bestTo] = x;
+                        improved = true;
+                    }
+                }
+            }
+            return order;
+        }
+
+        /**
+         * Whether this is the cheapest known way to rank the given set of options first
+         */
+        boolean cheapest(int placed, double prefixCost) {
+            float rounded = (float) prefixCost;
+            if (rounded<prefixCost) {
+                rounded = Math.nextUp(rounded);
+            }
+            long entry = (long) placed<<32 | Float.floatToRawIntBits(rounded) & 0xffffffffL;
+            int slot = (placed*0x9e3779b9)>>>(32-memoBits);
+            while (true) {
+                long current = memo.get(slot);
+                if ((int) (current>>>32)==placed && Float.intBitsToFloat((int) current)<=prefixCost) {
+                    return false;
+                }
+                if (memo.compareAndSet(slot, current, entry)) {
+                    return true;
+                }
+            }
+        }
+
+        class Branch extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final int[] prefix;
+            final int placed;
+            final double prefixCost;
+            final double remainingBound;
+
+            Branch(int[] prefix, int placed, double prefixCost, double remainingBound) {
+                this.prefix = prefix;
+                this.placed = placed;
+                this.prefixCost = prefixCost;
+                this.remainingBound = remainingBound;
+            }
+
+            @Override
+            protected void compute() {
+                if (prefix.length<SPLIT_DEPTH && n-prefix.length>SPLIT_DEPTH+2) {
+                    List<Branch> children = new ArrayList<>();
+                    for (int next=0; next<n; next++) {
+                        if ((placed & 1<<next)==0) {
+                            int[] childPrefix = Arrays.copyOf(prefix, prefix.length+1);
+                            childPrefix[prefix.length] = next;
+                            children.add(child(childPrefix, placed, next));
+                        }
+                    }
+                    invokeAll(children);
+                } else {
+                    int[] order = Arrays.copyOf(prefix, n);
+                    search(order, prefix.length, placed, prefixCost, remainingBound);
+                }
+            }
+
+            private Branch child(int[] childPrefix, int placed, int next) {
+                double added = 0;
+                double bound = remainingBound;
+                for (int u=0; u<n; u++) {
+                    if (u!=next && (placed & 1<<u)==0) {
+                        added += cost[next][u];
+                        bound -= Math.min(cost[next][u], cost[u][next]);
+                    }
+                }
+                return new Branch(childPrefix, placed | 1<<next, prefixCost+added, bound);
+            }
+        }
+
+        void search(int[] order, int depth, int placed, double prefixCost, double remainingBound) {
+            if (prefixCost+remainingBound>=bestCost) {
+                return;
+            }
+            if (depth==n) {
+                offer(order.clone());
+                return;
+            }
+            if (depth>0 && !cheapest(placed, prefixCost)) {
+                return;
+            }
+            // Try the cheapest next options first
+            int remaining = n-depth;
+            int[] candidates = new int[remaining];
+            double[] added = new double[n];
+            double[] bound = new double[n];
+            int c = 0;
+            for (int next=0; next<n; next++) {
+                if ((placed & 1<<next)==0) {
+                    candidates[c++] = next;
+                    for (int u=0; u<n; u++) {
+                        if (u!=next && (placed & 1<<u)==0) {
+                            added[next] += cost[next][u];
+                            bound[next] += Math.min(cost[next][u], cost[u][next]);
+                        }
+                    }
+                }
+            }
+            for (int i=1; i<remaining; i++) {
+                int x = candidates[i];
+                int j = i;
+                for (; j>0 && added[candidates[j-1]]-bound[candidates[j-1]]>added[x]-bound[x]; j--) {
+                    candidates[j] = candidates[j-1];
+                }
+                candidates[j] = x;
+            }
+            for (int next : candidates) {
+                order[depth] = next;
+                search(order, depth+1, placed | 1<<next, prefixCost+added[next], remainingBound-bound[next]);
+            }
+        }
+    }
+}
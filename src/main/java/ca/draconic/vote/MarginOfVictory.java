@@ -0,0 +1,335 @@
+package ca.draconic.vote;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import org.apache.commons.math3.FieldElement;
+
+/**
+ * The least number of ballots that would have to be changed to stop the winner of a contest from
+ * beating every rival.  Computed from the pairwise counts alone, which must be whole numbers of
+ * unit-weight ballots.
+ *
+ * For a Condorcet winner the margin is exact.  For a Schulze winner the pairwise counts do not say
+ * which ballots could be changed together, so the margin is bracketed: no change of fewer than
+ * {@link #getLowerBound()} ballots can affect the result, and the result can be changed by
+ * changing {@link #getUpperBound()} ballots that prefer the winner to {@link #getRival()}.  The
+ * rival that might first tie the winner at the lower bound is given by
+ * {@link #getLowerBoundRival()}.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Option>
+ */
+public class MarginOfVictory<Option> {
+
+    private final Option winner;
+    private final Option rival;
+    private final Option lowerBoundRival;
+    private final long lowerBound;
+    private final OptionalLong upperBound;
+
+    private MarginOfVictory(Option winner, Option rival, Option lowerBoundRival, long lowerBound,
+            OptionalLong upperBound) {
+        this.winner = winner;
+        this.rival = rival;
+        this.lowerBoundRival = lowerBoundRival;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    /**
+     * The winner whose margin this is
+     * @return
+     */
+    public Option getWinner() {
+        return winner;
+    }
+
+    /**
+     * The rival that changing {@link #getUpperBound()} ballots makes tie or beat the winner.  If
+     * no such change was found, this is the {@link #getLowerBoundRival() lower bound rival}.
+     * @return
+     */
+    public Option getRival() {
+        return rival;
+    }
+
+    /**
+     * The rival that could first tie or beat the winner once {@link #getLowerBound()} ballots
+     * are changed
+     * @return
+     */
+    public Option getLowerBoundRival() {
+        return lowerBoundRival;
+    }
+
+    /**
+     * Changing fewer ballots than this cannot alter the result
+     * @return
+     */
+    public long getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * Changing this many ballots is enough to alter the result, if such a change was found
+     * @return
+     */
+    public OptionalLong getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * Whether the bounds meet, giving the exact margin of victory
+     * @return
+     */
+    public boolean isExact() {
+        return upperBound.isPresent() && upperBound.getAsLong()==lowerBound;
+    }
+
+    @Override
+    public String toString() {
+        return "MarginOfVictory ["+winner+" over "+rival+": "+lowerBound+
+                (isExact() ? "" : " to "+(upperBound.isPresent() ? upperBound.getAsLong() : "?"))+"]";
+    }
+
+    /**
+     * Margin of victory of the Condorcet winner.  Each changed ballot can move a pairwise margin
+     * by at most 2, and moving the closest rival to the top of ballots that rank it below the
+     * winner achieves this, so the margin is half the smallest pairwise margin, rounded up.
+     * @param matrix
+     * @return the margin, or empty if there is no Condorcet winner
+     */
+    public static <Option, Count extends FieldElement<Count> & Comparable<Count>>
+    Optional<MarginOfVictory<Option>> condorcet(PreferenceMatrix<Option, Count> matrix) {
+        final long[][] d = wholeCounts(matrix);
+        final int C = d.length;
+        candidates: for (int w=0; w<C; w++) {
+            long best = Long.MAX_VALUE;
+            int rival = -1;
+            for (int j=0; j<C; j++) {
+                if (j==w) {
+                    continue;
+                }
+                long margin = d[w][j]-d[j][w];
+                if (margin<=0) {
+                    continue candidates;
+                }
+                long changes = (margin+1)/2;
+                if (changes<best) {
+                    best = changes;
+                    rival = j;
+                }
+            }
+            if (rival<0) {
+                return Optional.empty();
+            }
+            return Optional.of(new MarginOfVictory<>(matrix.getOption(w), matrix.getOption(rival),
+                    matrix.getOption(rival), best, OptionalLong.of(best)));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Margin of victory of the Schulze winner, using winning votes as link strengths as
+     * {@link PreferenceMatrix#beatPaths()} does.
+     *
+     * The lower bound is the fewest changes at which the strongest path any rival could have to
+     * the winner reaches the weakest path the winner could have to that rival, if every pairwise
+     * count moved by the number of changes in whichever direction hurts the winner.
+     *
+     * The upper bound is the fewest ballots preferring the winner to a rival that must be
+     * changed to instead rank the rival just above the winner.  That change only strengthens the
+     * rival's paths and weakens the winner's, so the effect on the direct link between the two
+     * decides it.
+     *
+     * Both take O(C<sup>2</sup>) time per rival and per step of a binary search over the number of
+     * changes.
+     * @param matrix
+     * @return the margin, or empty if no option beats every other by its beat paths, or there is
+     * no rival
+     */
+    public static <Option, Count extends FieldElement<Count> & Comparable<Count>>
+    Optional<MarginOfVictory<Option>> schulze(PreferenceMatrix<Option, Count> matrix) {
+        final long[][] d = wholeCounts(matrix);
+        final int C = d.length;
+        final int w = strictWinner(d);
+        if (w<0 || C<2) {
+            return Optional.empty();
+        }
+
+        // Lower bound: smallest k at which some rival could tie the winner
+        long lo = 0;
+        long hi = 0;
+        for (long[] row : d) {
+            for (long x : row) {
+                hi = Math.max(hi, x);
+            }
+        }
+        while (lo<hi) {
+            long mid = lo+(hi-lo)/2;
+            if (overturnPossible(d, w, mid)>=0) {
+                hi = mid;
+            } else {
+                lo = mid+1;
+            }
+        }
+        final long lowerBound = lo;
+        final int lowerBoundRival = overturnPossible(d, w, lowerBound);
+        int rival = lowerBoundRival;
+
+        // Upper bound: cheapest direct flip against any rival
+        long upperBound = Long.MAX_VALUE;
+        final long[][] link = links(d, 0, false);
+        final long[][] reverse = transpose(link);
+        for (int j=0; j<C; j++) {
+            if (j==w) {
+                continue;
+            }
+            // Strongest paths between the two that avoid the direct link
+            long winnerPath = widest(link, w, j)[j];
+            long rivalPath = widest(reverse, w, j)[j];
+            long flips = directFlips(d[w][j], d[j][w], winnerPath, rivalPath);
+            if (flips<upperBound) {
+                upperBound = flips;
+                rival = j;
+            }
+        }
+
+        return Optional.of(new MarginOfVictory<>(matrix.getOption(w), matrix.getOption(rival),
+                matrix.getOption(lowerBoundRival), lowerBound,
+                upperBound==Long.MAX_VALUE ? OptionalLong.empty() : OptionalLong.of(upperBound)));
+    }
+
+    /**
+     * Fewest changes from preferring w to j to preferring j to w after which j ties or beats w, or
+     * {@link Long#MAX_VALUE} if there are not enough such ballots.
+     */
+    private static long directFlips(long preferW, long preferJ, long winnerPath, long rivalPath) {
+        long lo = 0;
+        long hi = preferW+1;
+        while (lo<hi) {
+            long k = lo+(hi-lo)/2;
+            long w = preferW-k;
+            long j = preferJ+k;
+            long winner = Math.max(w>j ? w : 0, winnerPath);
+            long rival = Math.max(j>w ? j : 0, rivalPath);
+            if (rival>=winner) {
+                hi = k;
+            } else {
+                lo = k+1;
+            }
+        }
+        return lo>preferW ? Long.MAX_VALUE : lo;
+    }
+
+    /**
+     * The rival which could tie or beat w after k changes, if every count moved against w, or -1
+     */
+    private static int overturnPossible(long[][] d, int w, long k) {
+        long[] winnerPaths = widest(links(d, k, false), w, -1);
+        long[] rivalPaths = widest(transpose(links(d, k, true)), w, -1);
+        for (int j=0; j<d.length; j++) {
+            if (j!=w && rivalPaths[j]>=winnerPaths[j]) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Winning-votes link strengths after each count moves by k, making every link as strong
+     * (optimistic) or as weak as possible.
+     */
+    private static long[][] links(long[][] d, long k, boolean optimistic) {
+        final int C = d.length;
+        long[][] result = new long[C][C];
+        for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                if (i!=j) {
+                    long preferI = optimistic ? d[i][j]+k : d[i][j]-k;
+                    long preferJ = optimistic ? d[j][i]-k : d[j][i]+k;
+                    result[i][j] = preferI>preferJ ? Math.max(preferI, 0) : 0;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static long[][] transpose(long[][] m) {
+        final int C = m.length;
+        long[][] result = new long[C][C];
+        for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                result[j][i] = m[i][j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Strength of the strongest path from the source to every option, ignoring the direct link
+     * from the source to {@code skip}.
+     */
+    private static long[] widest(long[][] link, int source, int skip) {
+        final int C = link.length;
+        long[] width = new long[C];
+        boolean[] done = new boolean[C];
+        width[source] = Long.MAX_VALUE;
+        for (int n=0; n<C; n++) {
+            int u = -1;
+            for (int v=0; v<C; v++) {
+                if (!done[v] && (u<0 || width[v]>width[u])) {
+                    u = v;
+                }
+            }
+            if (width[u]==0) {
+                break;
+            }
+            done[u] = true;
+            for (int v=0; v<C; v++) {
+                if (!done[v] && !(u==source && v==skip)) {
+                    width[v] = Math.max(width[v], Math.min(width[u], link[u][v]));
+                }
+            }
+        }
+        width[source] = 0;
+        return width;
+    }
+
+    /**
+     * The option whose beat paths are stronger than every rival's, or -1
+     */
+    private static int strictWinner(long[][] d) {
+        final int C = d.length;
+        long[][] p = new long[C][];
+        long[][] link = links(d, 0, false);
+        for (int i=0; i<C; i++) {
+            p[i] = widest(link, i, -1);
+        }
+        candidates: for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                if (i!=j && p[i][j]<=p[j][i]) {
+                    continue candidates;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static long[][] wholeCounts(PreferenceMatrix<?, ?> matrix) {
+        return Arrays.stream(matrix.toDoubleArray())
+            .map(row->Arrays.stream(row)
+                .mapToLong(x->{
+                    if (x!=Math.rint(x) || x<0) {
+                        throw new IllegalArgumentException("Margin of victory needs whole ballot counts");
+                    }
+                    return (long) x;
+                })
+                .toArray())
+            .toArray(long[][]::new);
+    }
+}
@@ -0,0 +1,190 @@
+package ca.draconic.vote;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * An immutable, ordered set of options, each assigned a dense index from 0 to {@code size()-1}.
+ *
+ * A registry is meant to be created once per contest and shared by the ballots, tallies and
+ * matrices that refer to it.  Code holding the same registry instance can exchange option indices
+ * directly rather than looking options up again.  Enum options are indexed by an array over their
+ * ordinals rather than by hashing.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Option>
+ */
+public abstract class OptionRegistry<Option> extends AbstractList<Option> implements RandomAccess {
+
+    final Object[] order;
+    private int hash;
+
+    private OptionRegistry(Object[] order) {
+        this.order = order;
+    }
+
+    /**
+     * Creates a registry of the given options, indexed in iteration order.  If the collection is
+     * already a registry it is returned as is.
+     * @param options
+     * @return
+     * @throws IllegalArgumentException if an option is repeated
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static <Option> OptionRegistry<Option> of(Collection<Option> options) {
+        if (options instanceof OptionRegistry) {
+            return (OptionRegistry<Option>) options;
+        }
+        Object[] order = options.toArray();
+        for (Object option : order) {
+            Objects.requireNonNull(option, "Options must not be null");
+        }
+        if (order.length>0 && order[0] instanceof Enum) {
+            Class<? extends Enum> type = ((Enum) order[0]).getDeclaringClass();
+            if (Arrays.stream(order).allMatch(type::isInstance)) {
+                return new EnumRegistry<>(order, type);
+            }
+        }
+        return new HashRegistry<>(order);
+    }
+
+    /**
+     * Creates a registry of the given options, indexed in order.
+     * @param options
+     * @return
+     * @throws IllegalArgumentException if an option is repeated
+     */
+    @SafeVarargs
+    public static <Option> OptionRegistry<Option> of(Option... options) {
+        // Copied rather than wrapped so the varargs array does not escape
+        List<Option> copy = new ArrayList<>(options.length);
+        for (Option option : options) {
+            copy.add(option);
+        }
+        return of(copy);
+    }
+
+    /**
+     * The index of the option, or -1 if it is not in this registry
+     * @param option
+     * @return
+     */
+    public abstract int indexOf(Object option);
+
+    /**
+     * The index of the option
+     * @param option
+     * @return
+     * @throws NoSuchElementException if the option is not in this registry
+     */
+    public int getIndex(Option option) {
+        int i = indexOf(option);
+        if (i<0) {
+            throw new NoSuchElementException("Option "+option+" is unknown");
+        }
+        return i;
+    }
+
+    /**
+     * The option at the given index
+     * @param i
+     * @return
+     * @throws NoSuchElementException if the index is out of range
+     */
+    public Option getOption(int i) {
+        if (i<0 || i>=order.length) {
+            throw new NoSuchElementException(i+" is not a valid index");
+        }
+        return get(i);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Option get(int i) {
+        return (Option) order[i];
+    }
+
+    @Override
+    public int size() {
+        return order.length;
+    }
+
+    @Override
+    public boolean contains(Object option) {
+        return indexOf(option)>=0;
+    }
+
+    @Override
+    public int lastIndexOf(Object option) {
+        return indexOf(option);
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash==0) {
+            hash = super.hashCode();
+        }
+        return hash;
+    }
+
+    private static IllegalArgumentException repeated() {
+        return new IllegalArgumentException("Options must be unique");
+    }
+
+    private static class HashRegistry<Option> extends OptionRegistry<Option> {
+        final Map<Object, Integer> index;
+
+        HashRegistry(Object[] order) {
+            super(order);
+            index = new HashMap<>(order.length*2);
+            for (int i=0; i<order.length; i++) {
+                if (index.putIfAbsent(order[i], i)!=null) {
+                    throw repeated();
+                }
+            }
+        }
+
+        @Override
+        public int indexOf(Object option) {
+            Integer i = index.get(option);
+            return Objects.isNull(i) ? -1 : i;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static class EnumRegistry<Option> extends OptionRegistry<Option> {
+        final Class<? extends Enum> type;
+        final int[] index;
+
+        EnumRegistry(Object[] order, Class<? extends Enum> type) {
+            super(order);
+            this.type = type;
+            index = new int[type.getEnumConstants().length];
+            Arrays.fill(index, -1);
+            for (int i=0; i<order.length; i++) {
+                int ordinal = ((Enum) order[i]).ordinal();
+                if (index[ordinal]>=0) {
+                    throw repeated();
+                }
+                index[ordinal] = i;
+            }
+        }
+
+        @Override
+        public int indexOf(Object option) {
+            if (!type.isInstance(option)) {
+                return -1;
+            }
+            return index[((Enum) option).ordinal()];
+        }
+    }
+}
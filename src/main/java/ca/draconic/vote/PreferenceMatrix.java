@@ -1,21 +1,21 @@
 package ca.draconic.vote;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.apache.commons.math3.Field;
 import org.apache.commons.math3.FieldElement;
+import org.apache.commons.math3.fraction.BigFraction;
 import org.apache.commons.math3.fraction.Fraction;
 import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
 import org.apache.commons.math3.linear.FieldMatrix;
@@ -23,24 +23,32 @@ import org.apache.commons.math3.linear.MatrixUtils;
 
 public class PreferenceMatrix<Option, Count extends FieldElement<Count> & Comparable<Count>> {
     
-    final List<Option> order;
-    final Map<Option, Integer> index ;
+    final OptionRegistry<Option> order;
     final FieldMatrix<Count> count;
     
     public PreferenceMatrix(Collection<Option> options, Field<Count> field) {
         this(options, new Array2DRowFieldMatrix<>(field, options.size(), options.size()));
     }
     
+    /**
+     * @param options options in index order.  Passing an {@link OptionRegistry} shares it rather
+     *   than building a new one.
+     * @param count
+     */
     public PreferenceMatrix(Collection<Option> options, FieldMatrix<Count> count) {
-        order = List.copyOf(options);
-        final int C = order.size();
-        index=new HashMap<>(C);
-        {
-            int i=0;
-            for(Option option : options) {
-                index.put(option, i++);
-            }
+        this(OptionRegistry.of(options), count, true);
+    }
+    
+    private PreferenceMatrix(OptionRegistry<Option> order, FieldMatrix<Count> count, boolean check) {
+        this.order = order;
+        this.count = count;
+        if(check) {
+            check();
         }
+    }
+    
+    private void check() {
+        final int C = order.size();
         for(int i=0; i<C; i++) {
             if(!count.getEntry(i, i).equals(count.getField().getZero()))
                 throw new IllegalArgumentException("Preference matrix must be 0 on the diagonal");
@@ -48,7 +56,6 @@ public class PreferenceMatrix<Option, Count extends FieldElement<Count> & Compar
         if(count.getColumnDimension()!=C || count.getRowDimension()!=C) {
             throw new IllegalArgumentException("Matrix must have dimensions equal to number of options");
         }
-        this.count = count;
     }
     
     static <Option> PreferenceMatrix<Option,Fraction> fromArray(Collection<Option> options, int[][] count) {
@@ -101,19 +108,19 @@ public class PreferenceMatrix<Option, Count extends FieldElement<Count> & Compar
     }
     
     public Option getOption(int i) {
-        try {
-            return order.get(i);
-        } catch (ArrayIndexOutOfBoundsException ex) {
-            throw new NoSuchElementException(i+" is not a valid index");
-        }
+        return order.getOption(i);
     }
     
     public int getIndex(Option option) {
-        Integer i = index.get(option);
-        if (Objects.isNull(i)) {
-            throw new NoSuchElementException("Option "+option+" is unknown");
-        }
-        return i;
+        return order.getIndex(option);
+    }
+    
+    /**
+     * The options of this matrix, in index order
+     * @return
+     */
+    public OptionRegistry<Option> getOptions() {
+        return order;
     }
     
     private Count min(Count a, Count b) {
@@ -140,6 +147,16 @@ public class PreferenceMatrix<Option, Count extends FieldElement<Count> & Compar
             }
         }
         
+        widestPaths(result);
+        return new PreferenceMatrix<Option, Count>(order, result);
+    }
+    
+    /**
+     * Replaces each link strength with the strength of the strongest path between the options.
+     * @param result link strengths, updated in place
+     */
+    private void widestPaths(FieldMatrix<Count> result) {
+        final int C = order.size(); 
         for(int i = 0; i<C; i++) {
             for(int j = 0; j<C; j++) {
                 if(i!=j) {
@@ -151,10 +168,147 @@ public class PreferenceMatrix<Option, Count extends FieldElement<Count> & Compar
                 }
             }
         }
-        return new PreferenceMatrix<Option, Count>(order, result);
     }
     
+    /**
+     * Replaces each link strength in a C by C block of a row major array with the strength of the 
+     * strongest path between the options.
+     * @param paths link strengths, updated in place
+     * @param offset start of the block
+     * @param C number of options
+     */
+    static void strongestPaths(double[] paths, int offset, int C) {
+        for(int i = 0; i<C; i++) {
+            for(int j = 0; j<C; j++) {
+                if(i==j) {
+                    continue;
+                }
+                double ji = paths[offset+j*C+i];
+                for(int k = 0; k<C; k++) {
+                    if(k!=i && k!=j) {
+                        double through = Math.min(ji, paths[offset+i*C+k]);
+                        if(through>paths[offset+j*C+k]) {
+                            paths[offset+j*C+k] = through;
+                        }
+                    }
+                }
+            }
+        }
+    }
     
+    /**
+     * Counts, for each option, the options that beat it by the strongest paths in a C by C block
+     * @param paths strongest paths, row major
+     * @param offset start of the block
+     * @param C number of options
+     * @param defeats incremented for each defeat
+     * @param defeatsOffset index in defeats of the first option
+     */
+    static void countDefeats(double[] paths, int offset, int C, int[] defeats, int defeatsOffset) {
+        for(int i = 0; i<C; i++) {
+            for(int j = 0; j<C; j++) {
+                if(paths[offset+j*C+i]>paths[offset+i*C+j]) {
+                    defeats[defeatsOffset+i]++;
+                }
+            }
+        }
+    }
+    
+    /**
+     * The options with no defeats, as counted by {@link #countDefeats(double[], int, int, int[], int)}
+     * @param options
+     * @param defeats
+     * @param defeatsOffset index in defeats of the first option
+     * @return
+     */
+    static <Option> Set<Option> undefeated(List<Option> options, int[] defeats, int defeatsOffset) {
+        Set<Option> result = new HashSet<>();
+        for(int i = 0; i<options.size(); i++) {
+            if(defeats[defeatsOffset+i]==0) {
+                result.add(options.get(i));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Strongest paths if every link were as strong (optimistic) or as weak as it could be once 
+     * ballots of total weight {@code remaining} have been added.
+     */
+    private FieldMatrix<Count> boundedBeatPaths(Count remaining, boolean optimistic) {
+        final int C = order.size(); 
+        final Count zero = count.getField().getZero();
+        var result = count.createMatrix(C, C);
+        for(int i = 0; i<C; i++) {
+            for(int j = 0; j<C; j++) {
+                if(i!=j) {
+                    Count preferI = count.getEntry(i,j);
+                    Count preferJ = count.getEntry(j,i);
+                    if(optimistic) {
+                        // Every remaining ballot prefers i to j
+                        preferI = preferI.add(remaining);
+                    } else {
+                        // Every remaining ballot prefers j to i
+                        preferJ = preferJ.add(remaining);
+                    }
+                    result.setEntry(i, j, preferI.compareTo(preferJ)>0 ? preferI : zero);
+                }
+            }
+        }
+        widestPaths(result);
+        return result;
+    }
+    
+    private void checkRemaining(Count remaining) {
+        if(remaining.compareTo(count.getField().getZero())<0) {
+            throw new IllegalArgumentException("Remaining weight must not be negative");
+        }
+    }
+    
+    /**
+     * Find the Condorcet winner, if there is one that would remain the Condorcet winner however 
+     * ballots of total weight {@code remaining} are cast.
+     * @param remaining weight of the ballots not yet counted
+     * @return
+     */
+    public Optional<Option> lockedCondorcetWinner(Count remaining) {
+        checkRemaining(remaining);
+        final int C = order.size(); 
+        candidates: for(int i = 0; i<C; i++) {
+            for(int j = 0; j<C; j++) {
+                if(i!=j && count.getEntry(i,j).compareTo(count.getEntry(j,i).add(remaining))<=0) {
+                    continue candidates;
+                }
+            }
+            return Optional.of(getOption(i));
+        }
+        return Optional.empty();
+    }
+    
+    /**
+     * Find the unique Schulze winner, if there is one that would remain the unique winner however 
+     * ballots of total weight {@code remaining} are cast.  
+     * 
+     * This is conservative: it compares the winner's weakest possible beat paths with the 
+     * strongest possible paths of its rivals, which need not be reachable by the same ballots.
+     * @param remaining weight of the ballots not yet counted
+     * @return
+     */
+    public Optional<Option> lockedWinner(Count remaining) {
+        checkRemaining(remaining);
+        final int C = order.size(); 
+        var worst = boundedBeatPaths(remaining, false);
+        var best = boundedBeatPaths(remaining, true);
+        candidates: for(int i = 0; i<C; i++) {
+            for(int j = 0; j<C; j++) {
+                if(i!=j && worst.getEntry(i,j).compareTo(best.getEntry(j,i))<=0) {
+                    continue candidates;
+                }
+            }
+            return Optional.of(getOption(i));
+        }
+        return Optional.empty();
+    }
     
     public boolean isWin(int i, int j) {
         return count.getEntry(i,j).compareTo(count.getEntry(j,i))>0;
@@ -168,51 +322,136 @@ public class PreferenceMatrix<Option, Count extends FieldElement<Count> & Compar
     private static 
     <Option, 
      Count extends FieldElement<Count> & Comparable<Count>,
-     Ballot extends Ranking<Option> >
-    FieldMatrix<Count> unweightedRankedBallotMatrix(Collection<Option> options, Ballot vote, Field<Count> field) {
+     Ballot extends Ranking<Option> & WeightedBallot<Count> > 
+    FieldMatrix<Count> weightedRankedBallotMatrix(OptionRegistry<Option> options, Ballot vote, Field<Count> field) {
         final int C = options.size();
         FieldMatrix<Count> result = new Array2DRowFieldMatrix<>(field, C, C);
-        int i = -1;
-        for(Option a: options) {
-            i++;
-            int j=-1;
-            for(Option b: options) {
-                j++;
-                
-                if (vote.rank(a, b).get()==Preference.A) {
-                    result.addToEntry(i, j, field.getOne());
+        final int[] ranks = vote.ranks(options);
+        final Count weight = vote.getWeight();
+        for(int i=0; i<C; i++) {
+            for(int j=0; j<C; j++) {
+                if (ranks[i]<ranks[j]) {
+                    result.setEntry(i, j, weight);
                 }
             }
         }
         return result;
     }
     
-    private static 
-    <Option, 
-     Count extends FieldElement<Count> & Comparable<Count>,
-     Ballot extends Ranking<Option> & WeightedBallot<Count> > 
-    FieldMatrix<Count> weightedRankedBallotMatrix(Collection<Option> options, Ballot vote, Field<Count> field) {
-        FieldMatrix<Count> result = unweightedRankedBallotMatrix(options, vote, field);
-        return result.scalarMultiply(vote.getWeight());
-    }
-    
     public static 
     <Option, 
      Count extends FieldElement<Count> & Comparable<Count>,
      Ballot extends Ranking<Option> & WeightedBallot<Count> > 
     PreferenceMatrix<Option, Count> weightedPreferential(Collection<Option> options, Collection<Ballot> votes, Field<Count> field) {
-        final int C = options.size();
+        final var registry = OptionRegistry.of(options);
+        final int C = registry.size();
         FieldMatrix<Count> identity = new Array2DRowFieldMatrix<>(field, C, C);
         var matrix = votes.stream()
-            .map(vote->weightedRankedBallotMatrix(options, vote, field))
+            .map(vote->weightedRankedBallotMatrix(registry, vote, field))
             .reduce(identity,FieldMatrix::add);
-        return new PreferenceMatrix<Option, Count>(options, matrix);
+        return new PreferenceMatrix<Option, Count>(registry, matrix);
+    }
+    
+    /**
+     * Copeland, Minimax, Borda, Condorcet and Schulze results together, computed from one primitive 
+     * copy of the counts.
+     * @return
+     * @throws UnsupportedOperationException if the counts are not {@link Number}s
+     */
+    public CondorcetAnalysis<Option> analyse() {
+        return new CondorcetAnalysis<>(order, toDoubleArray());
     }
     
     public FieldMatrix<Count> getData() {
         return count;
     }
     
+    /**
+     * Copy of the counts as primitive doubles, for analyses that work on primitive arrays.
+     * @return
+     * @throws UnsupportedOperationException if the counts are not {@link Number}s
+     */
+    public double[][] toDoubleArray() {
+        final int C = order.size(); 
+        double[][] result = new double[C][C];
+        for(int i = 0; i<C; i++) {
+            for(int j = 0; j<C; j++) {
+                result[i][j] = doubleValue(count.getEntry(i, j));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Hash of the counts of this matrix.  It is the sum of a hash of each entry, so a running tally
+     * can keep it up to date entry by entry as counts change.  Different counts can still share a
+     * fingerprint, so a match must be confirmed by comparing the counts.
+     * @return
+     */
+    public long fingerprint() {
+        final int C = order.size(); 
+        long result = 0;
+        for(int i = 0; i<C; i++) {
+            for(int j = 0; j<C; j++) {
+                result += fingerprint(i, j, count.getEntry(i, j));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Contribution of one entry to {@link #fingerprint()}
+     */
+    static long fingerprint(int i, int j, Object value) {
+        return mix(((long) i<<32 | j) + 0x9e3779b97f4a7c15L*valueHash(value));
+    }
+    
+    /**
+     * 64 bit hash of a count.  {@link Fraction} and {@link BigFraction} are hashed from their full 
+     * numerator and denominator, as their {@link Object#hashCode()} collide easily.  Other types 
+     * fall back to their hashCode.
+     */
+    static long valueHash(Object value) {
+        if(value instanceof Fraction) {
+            var f = (Fraction) value;
+            return mix(mix(f.getNumerator()) + f.getDenominator());
+        }
+        if(value instanceof BigFraction) {
+            var f = (BigFraction) value;
+            return hash(hash(0, f.getNumerator()), f.getDenominator());
+        }
+        return mix(value.hashCode());
+    }
+    
+    private static long hash(long h, BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        h = mix(h + bytes.length);
+        for(int k = 0; k<bytes.length; k += 8) {
+            long chunk = 0;
+            for(int b = k; b<Math.min(k+8, bytes.length); b++) {
+                chunk = chunk<<8 | (bytes[b] & 0xff);
+            }
+            h = mix(h + chunk);
+        }
+        return h;
+    }
+    
+    /**
+     * SplitMix64 finaliser
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+    
+    static double doubleValue(FieldElement<?> value) {
+        if(value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        throw new UnsupportedOperationException("Counts of type "+value.getClass().getName()+" are not numeric");
+    }
+    
     /**
      * Assuming there are no cyclical preferences, returns the options ordered by the preference of
      * this matrix.  Tied options are grouped as a set.
@@ -239,18 +478,40 @@ public class PreferenceMatrix<Option, Count extends FieldElement<Count> & Compar
         return result;
     }
     
-    public PreferenceMatrix<Option, Count> margins() {
-        final int C = order.size(); 
-        var result = count.createMatrix(C, C);
-        
-        for (int i=1; i<C; i++) {
-            for (int j=0; j<i; j++) {
-                Count margin = get(i,j).getMargin();
-                result.setEntry(i, j, margin);
-                result.setEntry(j, i, margin.negate());
-            }
+    /**
+     * View of the margin of each option over each other, computed on access.  Unlike 
+     * {@link #margins()} nothing is copied, and later changes to this matrix show through.
+     * @return
+     */
+    public PreferenceMatrix<Option, Count> marginsView() {
+        return new PreferenceMatrix<>(order, new FieldMatrixView.Margins<>(count), false);
+    }
+    
+    /**
+     * View of this matrix with every preference reversed, computed on access.
+     * @return
+     */
+    public PreferenceMatrix<Option, Count> transposeView() {
+        return new PreferenceMatrix<>(order, new FieldMatrixView.Transpose<>(count), false);
+    }
+    
+    /**
+     * View of this matrix restricted to some of its options, indexed in the order given.  This is
+     * the matrix that would have been tallied had the other options not been on the ballots.
+     * @param options
+     * @return
+     * @throws NoSuchElementException if an option is not in this matrix
+     */
+    public PreferenceMatrix<Option, Count> restrictTo(Collection<Option> options) {
+        var subset = OptionRegistry.of(options);
+        int[] indices = new int[subset.size()];
+        for(int i=0; i<indices.length; i++) {
+            indices[i] = getIndex(subset.get(i));
         }
-        
-        return new PreferenceMatrix<Option, Count>(order, result);
+        return new PreferenceMatrix<>(subset, new FieldMatrixView.Subset<>(count, indices), false);
+    }
+    
+    public PreferenceMatrix<Option, Count> margins() {
+        return new PreferenceMatrix<Option, Count>(order, new FieldMatrixView.Margins<>(count).copy(), false);
     }
 }
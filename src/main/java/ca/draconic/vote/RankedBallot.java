@@ -2,15 +2,14 @@ package ca.draconic.vote;
 
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
 
 import org.apache.commons.math3.Field;
 import org.apache.commons.math3.FieldElement;
-import org.apache.commons.math3.util.Pair;
 
 /**
  * 
@@ -20,15 +19,29 @@ import org.apache.commons.math3.util.Pair;
 public class RankedBallot<Option, Count extends FieldElement<Count> & Comparable<Count>>
     implements Ranking<Option>, WeightedBallot<Count> {
     
-    Map<Option, Integer> ranking;
+    final OptionRegistry<Option> options;
+    final int[] ranks;
     private Count weight;
     
+    /**
+     * Takes the ranks of the options of a registry, in index order.  The array is not copied.
+     */
+    RankedBallot(OptionRegistry<Option> options, int[] ranks, Count weight) {
+        this.options = options;
+        this.ranks = ranks;
+        this.weight = weight;
+    }
+    
     /**
      * Takes a map of Options to rankings (lower numbers are more preferred)
      * @param ranking
      */
     public RankedBallot(Map<Option, Integer> ranking, Count weight) {
-        this.ranking = Map.copyOf(ranking);
+        this.options = OptionRegistry.of(ranking.keySet());
+        this.ranks = new int[options.size()];
+        for(int i=0; i<ranks.length; i++) {
+            ranks[i] = Objects.requireNonNull(ranking.get(options.get(i)));
+        }
         this.weight = weight;
     }
     
@@ -72,9 +85,29 @@ public class RankedBallot<Option, Count extends FieldElement<Count> & Comparable
     
     @Override
     public Optional<Preference> rank(Option a, Option b) {
-        var rankA = Optional.ofNullable(ranking.get(a));
-        var rankB = Optional.ofNullable(ranking.get(b));
-        return rankA.flatMap(x->rankB.map(y->Preference.fromRanks(x,y)));
+        int i = options.indexOf(a);
+        int j = options.indexOf(b);
+        if(i<0 || j<0) {
+            return Optional.empty();
+        }
+        return Optional.of(Preference.fromRanks(ranks[i], ranks[j]));
+    }
+    
+    @Override
+    public int[] ranks(OptionRegistry<Option> registry) {
+        if(registry==options) {
+            return ranks.clone();
+        }
+        final int C = registry.size();
+        int[] result = new int[C];
+        for(int i=0; i<C; i++) {
+            int j = options.indexOf(registry.get(i));
+            if(j<0) {
+                throw new NoSuchElementException("Option "+registry.get(i)+" is not ranked");
+            }
+            result[i] = ranks[j];
+        }
+        return result;
     }
 
     @Override
@@ -87,37 +120,11 @@ public class RankedBallot<Option, Count extends FieldElement<Count> & Comparable
         this.weight=this.weight.multiply(multiplier);
     }
     
-    private static <T, U> Iterable<Pair<T,U>> zip(Iterable<T> o1, Iterable<U> o2){
-        return new Iterable<>() {
-
-            @Override
-            public Iterator<Pair<T, U>> iterator() {
-                var i1 = o1.iterator();
-                var i2 = o2.iterator();
-                
-                return new Iterator<>() {
-
-                    @Override
-                    public boolean hasNext() {
-                        return i1.hasNext() && i2.hasNext();
-                    }
-
-                    @Override
-                    public Pair<T, U> next() {
-                        return new Pair<>(i1.next(), i2.next());
-                    }
-                    
-                };
-            }
-            
-        };
-    }
-    
     public static class Builder<Option, Count extends FieldElement<Count> & Comparable<Count>> {
-        private final List<Option> options;
+        private final OptionRegistry<Option> options;
         private final Field<Count> field;
 
-        private Builder(List<Option> options, Field<Count> field) {
+        private Builder(OptionRegistry<Option> options, Field<Count> field) {
             super();
             this.options = options;
             this.field = field;
@@ -127,22 +134,25 @@ public class RankedBallot<Option, Count extends FieldElement<Count> & Comparable
             if(ranks.size()!=options.size()) {
                 throw new IllegalArgumentException("ranks must have same size as options");
             }
-            var map = new HashMap<Option, Integer>();
-            for(var pair: zip(options, ranks)) {
-                map.put(pair.getKey(), pair.getValue());
-            }
-            return new RankedBallot<Option, Count>(map, weight);
+            return new RankedBallot<Option, Count>(options, 
+                    ranks.stream().mapToInt(Integer::intValue).toArray(), weight);
         }
         
         public RankedBallot<Option, Count> ballot(List<Integer> ranks) {
             return ballot(ranks, field.getOne());
         }
+        
+        /**
+         * The options of the ballots built, shared with the ballots themselves.
+         * @return
+         */
+        public OptionRegistry<Option> getOptions() {
+            return options;
+        }
     }
     
     public static <Option, Count extends FieldElement<Count> & Comparable<Count>> 
     Builder<Option, Count> builder(List<Option> options, Field<Count> field) {
-        if(new HashSet<>(options).size()!=options.size())
-            throw new IllegalArgumentException("Options must be unique");
-        return new Builder<>(options, field);
+        return new Builder<>(OptionRegistry.of(options), field);
     }
 }
@@ -1,6 +1,7 @@
 package ca.draconic.vote;
 
 import java.util.Comparator;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 
 /**
@@ -13,6 +14,26 @@ public interface Ranking<Option> extends Comparator<Option> {
     
     public Optional<Preference> rank(Option a, Option b);
     
+    /**
+     * The ranks of the given options in index order, lower numbers are more preferred.  Only the
+     * relative order of the ranks is significant.
+     * @param options
+     * @return
+     * @throws NoSuchElementException if an option is not ranked
+     */
+    default int[] ranks(OptionRegistry<Option> options) {
+        final int C = options.size();
+        int[] result = new int[C];
+        for(int i=0; i<C; i++) {
+            for(int j=0; j<C; j++) {
+                if(rank(options.get(j), options.get(i)).get()==Preference.A) {
+                    result[i]++;
+                }
+            }
+        }
+        return result;
+    }
+    
     @Override
     default int compare(Option a, Option b) {
         return rank(a,b).get().comparison;
@@ -0,0 +1,269 @@
+package ca.draconic.vote;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.SplittableRandom;
+
+import org.apache.commons.math3.Field;
+import org.apache.commons.math3.FieldElement;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+/**
+ * An approximate tally that keeps a fixed size uniform random sample of the ballots it is given,
+ * for polls too large to count exactly in time.  Memory use depends only on the sample size, and
+ * an estimate takes time proportional to the sample rather than to the number of ballots.
+ *
+ * Not thread safe.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Option>
+ * @param <Count>
+ */
+public class SampledTally<Option, Count extends FieldElement<Count> & Comparable<Count>> {
+
+    final OptionRegistry<Option> options;
+    final Field<Count> field;
+    private final SplittableRandom random;
+
+    private final int[][] ranks;
+    private final Object[] weights;
+    private long seen = 0;
+
+    /**
+     * @param options
+     * @param field
+     * @param capacity number of ballots to keep
+     */
+    public SampledTally(Collection<Option> options, Field<Count> field, int capacity) {
+        this(options, field, capacity, new SplittableRandom());
+    }
+
+    /**
+     * @param options
+     * @param field
+     * @param capacity number of ballots to keep
+     * @param random source of the sample
+     */
+    public SampledTally(Collection<Option> options, Field<Count> field, int capacity, SplittableRandom random) {
+        if (capacity<2) {
+            throw new IllegalArgumentException("Sample must hold at least 2 ballots");
+        }
+        this.options = OptionRegistry.of(options);
+        this.field = field;
+        this.random = random;
+        this.ranks = new int[capacity][];
+        this.weights = new Object[capacity];
+    }
+
+    /**
+     * Offer a ballot to the sample
+     * @param ballot
+     */
+    public <Ballot extends Ranking<Option> & WeightedBallot<Count>> void add(Ballot ballot) {
+        // Reservoir sampling: keep the nth ballot with probability capacity/n
+        int slot;
+        if (seen<ranks.length) {
+            slot = (int) seen;
+        } else {
+            long r = random.nextLong(seen+1);
+            slot = r<ranks.length ? (int) r : -1;
+        }
+        seen++;
+        if (slot>=0) {
+            ranks[slot] = ballot.ranks(options);
+            weights[slot] = ballot.getWeight();
+        }
+    }
+
+    public <Ballot extends Ranking<Option> & WeightedBallot<Count>> void addAll(Collection<Ballot> ballots) {
+        for (Ballot ballot : ballots) {
+            add(ballot);
+        }
+    }
+
+    /**
+     * Number of ballots offered
+     * @return
+     */
+    public long getCount() {
+        return seen;
+    }
+
+    /**
+     * Number of ballots in the sample
+     * @return
+     */
+    public int getSampleSize() {
+        return (int) Math.min(seen, ranks.length);
+    }
+
+    /**
+     * Estimate the result from the current sample.  The intervals for the margins are Agresti-Coull
+     * intervals, which keep close to their stated coverage when the sample is lopsided or unanimous.
+     * @param confidence confidence level of the intervals, such as 0.95
+     * @return
+     */
+    public Estimate<Option, Count> estimate(double confidence) {
+        if (!(confidence>0 && confidence<1)) {
+            throw new IllegalArgumentException("Confidence must be between 0 and 1");
+        }
+        final int C = options.size();
+        final int n = getSampleSize();
+        FieldMatrix<Count> count = new Array2DRowFieldMatrix<>(field, C, C);
+        double[][] sum = new double[C][C];
+        double[][] sumOfSquares = new double[C][C];
+        double heaviest = 0;
+        for (int k=0; k<n; k++) {
+            final int[] rank = ranks[k];
+            @SuppressWarnings("unchecked")
+            final Count weight = (Count) weights[k];
+            final double w = PreferenceMatrix.doubleValue(weight);
+            heaviest = Math.max(heaviest, w);
+            for (int i=0; i<C; i++) {
+                for (int j=0; j<C; j++) {
+                    if (rank[i]<rank[j]) {
+                        count.addToEntry(i, j, weight);
+                        // Contribution of this ballot to the margin of i over j, and of j over i
+                        sum[i][j] += w;
+                        sum[j][i] -= w;
+                        sumOfSquares[i][j] += w*w;
+                        sumOfSquares[j][i] += w*w;
+                    }
+                }
+            }
+        }
+        double z = new NormalDistribution().inverseCumulativeProbability(1-(1-confidence)/2);
+        // Finite population correction, as the sample is drawn without replacement
+        double correction = Math.sqrt(Math.max(0, 1-(double) n/seen));
+        // Agresti-Coull adjustment: z^2/2 imaginary ballots each way at the heaviest weight, so
+        // that a unanimous sample still gives an interval of some width
+        double adjusted = n+z*z;
+        double pseudoSquares = z*z*heaviest*heaviest;
+        Interval[][] margins = new Interval[C][C];
+        for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                if (n==0) {
+                    margins[i][j] = new Interval(0, 0, 0);
+                    continue;
+                }
+                double mean = sum[i][j]/n;
+                if (n==seen) {
+                    // Every ballot was sampled, so the margin is known exactly
+                    margins[i][j] = new Interval(seen*mean, seen*mean, seen*mean);
+                    continue;
+                }
+                double centre = sum[i][j]/adjusted;
+                double variance = Math.max(0, (sumOfSquares[i][j]+pseudoSquares)/adjusted-centre*centre);
+                double error = z*Math.sqrt(variance/adjusted)*correction;
+                margins[i][j] = new Interval(
+                        seen*Math.min(mean, centre-error), seen*mean, seen*Math.max(mean, centre+error));
+            }
+        }
+        return new Estimate<>(new PreferenceMatrix<>(options, count), margins, n==0 ? 0 : (double) seen/n);
+    }
+
+    /**
+     * A confidence interval
+     */
+    public static class Interval {
+        private final double lower;
+        private final double estimate;
+        private final double upper;
+
+        Interval(double lower, double estimate, double upper) {
+            this.lower = lower;
+            this.estimate = estimate;
+            this.upper = upper;
+        }
+
+        public double getLower() {
+            return lower;
+        }
+
+        public double getEstimate() {
+            return estimate;
+        }
+
+        public double getUpper() {
+            return upper;
+        }
+
+        @Override
+        public String toString() {
+            return "Interval ["+lower+", "+estimate+", "+upper+"]";
+        }
+    }
+
+    /**
+     * An estimated result
+     */
+    public static class Estimate<Option, Count extends FieldElement<Count> & Comparable<Count>> {
+        private final PreferenceMatrix<Option, Count> matrix;
+        private final Interval[][] margins;
+        private final double scale;
+
+        Estimate(PreferenceMatrix<Option, Count> matrix, Interval[][] margins, double scale) {
+            this.matrix = matrix;
+            this.margins = margins;
+            this.scale = scale;
+        }
+
+        /**
+         * Preference matrix of the sampled ballots.  Multiply by {@link #getScale()} to estimate
+         * the counts of all the ballots.
+         * @return
+         */
+        public PreferenceMatrix<Option, Count> getMatrix() {
+            return matrix;
+        }
+
+        /**
+         * Ratio of ballots offered to ballots sampled
+         * @return
+         */
+        public double getScale() {
+            return scale;
+        }
+
+        /**
+         * Confidence interval for the margin of a over b across all ballots offered
+         * @param a
+         * @param b
+         * @return
+         */
+        public Interval getMargin(Option a, Option b) {
+            return margins[matrix.getIndex(a)][matrix.getIndex(b)];
+        }
+
+        /**
+         * The preference between a and b, if it is clear at the confidence level of the estimate.
+         * {@link Preference#NONE} is never returned as a tie can not be established by sampling.
+         * @param a
+         * @param b
+         * @return
+         */
+        public Optional<Preference> getPreference(Option a, Option b) {
+            var margin = getMargin(a, b);
+            if (margin.getLower()>0) {
+                return Optional.of(Preference.A);
+            }
+            if (margin.getUpper()<0) {
+                return Optional.of(Preference.B);
+            }
+            return Optional.empty();
+        }
+
+        /**
+         * Whether a beats b in the sample, and the interval for its margin lies wholly above zero
+         * @param a
+         * @param b
+         * @return
+         */
+        public boolean isConfidentWin(Option a, Option b) {
+            return getPreference(a, b).equals(Optional.of(Preference.A));
+        }
+    }
+}
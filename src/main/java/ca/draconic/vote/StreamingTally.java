@@ -0,0 +1,157 @@
+package ca.draconic.vote;
+
+import java.util.Collection;
+import java.util.Optional;
+
+import org.apache.commons.math3.Field;
+import org.apache.commons.math3.FieldElement;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+/**
+ * A running tally of a contest whose ballots are counted in batches, where the total weight still
+ * to be counted is known.  After each batch it can report whether the result is already locked in,
+ * so that a decided contest can be called early.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Option>
+ * @param <Count>
+ */
+public class StreamingTally<Option, Count extends FieldElement<Count> & Comparable<Count>> {
+
+    final OptionRegistry<Option> options;
+    final Field<Count> field;
+    final FieldMatrix<Count> count;
+    private Count remaining;
+    private long fingerprint;
+    /**
+     * Number of batches counted, so a caller can tell the counts have not changed without
+     * comparing them
+     */
+    private long version = 0;
+
+    private Optional<Option> winner = Optional.empty();
+    private Optional<Option> condorcetWinner = Optional.empty();
+    private boolean checked = false;
+
+    /**
+     * @param options
+     * @param field
+     * @param remaining total weight of the ballots to be counted
+     */
+    public StreamingTally(Collection<Option> options, Field<Count> field, Count remaining) {
+        this.options = OptionRegistry.of(options);
+        this.field = field;
+        final int C = this.options.size();
+        this.count = new Array2DRowFieldMatrix<>(field, C, C);
+        this.remaining = remaining;
+        this.fingerprint = new PreferenceMatrix<>(this.options, count).fingerprint();
+        if (remaining.compareTo(field.getZero())<0) {
+            throw new IllegalArgumentException("Remaining weight must not be negative");
+        }
+    }
+
+    /**
+     * Count a batch of ballots
+     * @param batch
+     * @throws IllegalArgumentException if the batch weighs more than the weight remaining
+     */
+    public <Ballot extends Ranking<Option> & WeightedBallot<Count>>
+    void add(Collection<Ballot> batch) {
+        Count weight = field.getZero();
+        for (Ballot ballot : batch) {
+            weight = weight.add(ballot.getWeight());
+        }
+        if (weight.compareTo(remaining)>0) {
+            throw new IllegalArgumentException("Batch weighs more than the remaining ballots");
+        }
+        var partial = PreferenceMatrix.weightedPreferential(options, batch, field).getData();
+        final int C = options.size();
+        for (int i=0; i<C; i++) {
+            for (int j=0; j<C; j++) {
+                Count before = count.getEntry(i, j);
+                Count after = before.add(partial.getEntry(i, j));
+                count.setEntry(i, j, after);
+                fingerprint += PreferenceMatrix.fingerprint(i, j, after)-PreferenceMatrix.fingerprint(i, j, before);
+            }
+        }
+        remaining = remaining.subtract(weight);
+        version++;
+        checked = false;
+    }
+
+    /**
+     * Total weight of the ballots not yet counted
+     * @return
+     */
+    public Count getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * The {@link PreferenceMatrix#fingerprint()} of the counts so far, kept up to date as batches
+     * are added
+     * @return
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    long version() {
+        return version;
+    }
+
+    /**
+     * Preference matrix of the ballots counted so far
+     * @return
+     */
+    public PreferenceMatrix<Option, Count> getMatrix() {
+        return new PreferenceMatrix<>(options, count.copy());
+    }
+
+    /**
+     * The Schulze winner, if the remaining ballots can no longer change it.  Once a winner is
+     * locked in, later calls return it without looking at the counts again.
+     * @return
+     */
+    public Optional<Option> decidedWinner() {
+        check();
+        return winner;
+    }
+
+    /**
+     * The Condorcet winner, if the remaining ballots can no longer change it.
+     * @return
+     */
+    public Optional<Option> decidedCondorcetWinner() {
+        check();
+        return condorcetWinner;
+    }
+
+    /**
+     * Whether the Schulze winner is locked in
+     * @return
+     */
+    public boolean isDecided() {
+        return decidedWinner().isPresent();
+    }
+
+    private void check() {
+        if (checked) {
+            return;
+        }
+        // A locked result stays locked as the remaining weight only goes down
+        if (condorcetWinner.isEmpty() || winner.isEmpty()) {
+            var matrix = new PreferenceMatrix<>(options, count);
+            if (condorcetWinner.isEmpty()) {
+                condorcetWinner = matrix.lockedCondorcetWinner(remaining);
+            }
+            if (winner.isEmpty()) {
+                // A locked Condorcet winner is always the Schulze winner
+                winner = condorcetWinner.isPresent() ? condorcetWinner : matrix.lockedWinner(remaining);
+            }
+        }
+        checked = true;
+    }
+}
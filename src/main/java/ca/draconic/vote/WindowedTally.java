@@ -0,0 +1,145 @@
+package ca.draconic.vote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.math3.Field;
+import org.apache.commons.math3.FieldElement;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+/**
+ * A tally of ballots submitted in batches, each batch tagged with a key such as its submission time
+ * or sequence number.  The preference matrix of any contiguous range of keys can be retrieved
+ * without recounting, by merging O(log n) partial matrices kept in a Fenwick tree.
+ *
+ * Batches must be added in non-decreasing key order.
+ *
+ * @author Kevin Smith <smithkm@draconic.ca>
+ *
+ * @param <Option>
+ * @param <Count>
+ */
+public class WindowedTally<Option, Count extends FieldElement<Count> & Comparable<Count>> {
+
+    final OptionRegistry<Option> options;
+    final Field<Count> field;
+
+    private long[] keys = new long[16];
+    /**
+     * Node n (counting from 1) holds the sum of batches n-lowbit(n)+1 through n.
+     */
+    private final List<FieldMatrix<Count>> tree = new ArrayList<>();
+
+    public WindowedTally(Collection<Option> options, Field<Count> field) {
+        this.options = OptionRegistry.of(options);
+        this.field = field;
+    }
+
+    /**
+     * Tally a batch of ballots under the given key
+     * @param key
+     * @param batch
+     * @throws IllegalArgumentException if the key is less than that of the previous batch
+     */
+    public <Ballot extends Ranking<Option> & WeightedBallot<Count>>
+    void add(long key, Collection<Ballot> batch) {
+        add(key, PreferenceMatrix.weightedPreferential(options, batch, field));
+    }
+
+    /**
+     * Add an already tallied batch under the given key
+     * @param key
+     * @param batch
+     * @throws IllegalArgumentException if the key is less than that of the previous batch, or the
+     *   batch has different options to this tally
+     */
+    public void add(long key, PreferenceMatrix<Option, Count> batch) {
+        final int n = tree.size();
+        if (n>0 && key<keys[n-1]) {
+            throw new IllegalArgumentException("Batches must be added in key order");
+        }
+        if (!batch.getOptions().equals(options)) {
+            throw new IllegalArgumentException("Batch must have the same options as the tally");
+        }
+        if (n==keys.length) {
+            keys = Arrays.copyOf(keys, n*2);
+        }
+        keys[n] = key;
+
+        // New node n+1 covers this batch plus the nodes below it down to n+1-lowbit(n+1)
+        final int node = n+1;
+        FieldMatrix<Count> sum = batch.getData().copy();
+        for (int i=node-1; i>node-Integer.lowestOneBit(node); i-=Integer.lowestOneBit(i)) {
+            sum = sum.add(tree.get(i-1));
+        }
+        tree.add(sum);
+    }
+
+    /**
+     * The number of batches tallied
+     * @return
+     */
+    public int size() {
+        return tree.size();
+    }
+
+    /**
+     * Preference matrix of all batches with keys from {@code fromKey} inclusive to {@code toKey}
+     * exclusive
+     * @param fromKey
+     * @param toKey
+     * @return
+     */
+    public PreferenceMatrix<Option, Count> range(long fromKey, long toKey) {
+        int from = firstIndexAtLeast(fromKey);
+        int to = Math.max(from, firstIndexAtLeast(toKey));
+        return new PreferenceMatrix<>(options, prefix(to).subtract(prefix(from)));
+    }
+
+    /**
+     * Preference matrix of all batches with keys up to and including {@code key}
+     * @param key
+     * @return
+     */
+    public PreferenceMatrix<Option, Count> asOf(long key) {
+        int to = key==Long.MAX_VALUE ? tree.size() : firstIndexAtLeast(key+1);
+        return new PreferenceMatrix<>(options, prefix(to));
+    }
+
+    /**
+     * Preference matrix of all batches
+     * @return
+     */
+    public PreferenceMatrix<Option, Count> total() {
+        return new PreferenceMatrix<>(options, prefix(tree.size()));
+    }
+
+    /**
+     * Sum of the first n batches
+     */
+    private FieldMatrix<Count> prefix(int n) {
+        final int C = options.size();
+        FieldMatrix<Count> sum = new Array2DRowFieldMatrix<>(field, C, C);
+        for (int i=n; i>0; i-=Integer.lowestOneBit(i)) {
+            sum = sum.add(tree.get(i-1));
+        }
+        return sum;
+    }
+
+    private int firstIndexAtLeast(long key) {
+        int lo = 0;
+        int hi = tree.size();
+        while (lo<hi) {
+            int mid = (lo+hi)>>>1;
+            if (keys[mid]<key) {
+                lo = mid+1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,160 @@
+package ca.draconic.vote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.math3.fraction.Fraction;
+import org.apache.commons.math3.fraction.FractionField;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.util.Decimal64;
+import org.junit.jupiter.api.Test;
+
+public class AnalysisCacheTest {
+
+    static final List<String> OPTIONS = List.of("A", "B", "C");
+
+    @Test
+    public void testHitsAndMisses() {
+        AnalysisCache<String, Fraction> unit = new AnalysisCache<>(10);
+        var matrix = PreferenceMatrix.fromArray(OPTIONS, new int[][] {
+            {0, 42, 9},
+            {41, 0, 5},
+            {9, 100, 0},
+        });
+        var same = PreferenceMatrix.fromArray(OPTIONS, new int[][] {
+            {0, 42, 9},
+            {41, 0, 5},
+            {9, 100, 0},
+        });
+
+        var first = unit.get(matrix, AnalysisCache.Analysis.beatPaths());
+        assertEquals(matrix.beatPaths().getData(), first.getData());
+        assertSame(first, unit.get(same, AnalysisCache.Analysis.beatPaths()));
+        assertEquals(matrix.optionsByPreference(), unit.get(matrix, AnalysisCache.Analysis.optionsByPreference()));
+
+        assertEquals(1, unit.getHits());
+        assertEquals(2, unit.getMisses());
+
+        // Same counts under different options are a different contest
+        var relabelled = new PreferenceMatrix<>(List.of("X", "Y", "Z"), same.getData());
+        unit.get(relabelled, AnalysisCache.Analysis.beatPaths());
+        assertEquals(3, unit.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        AnalysisCache<String, Fraction> unit = new AnalysisCache<>(2);
+        var a = PreferenceMatrix.fromArray(OPTIONS, new int[][] {{0, 1, 2}, {3, 0, 4}, {5, 6, 0}});
+        var b = PreferenceMatrix.fromArray(OPTIONS, new int[][] {{0, 2, 2}, {3, 0, 4}, {5, 6, 0}});
+        var c = PreferenceMatrix.fromArray(OPTIONS, new int[][] {{0, 3, 2}, {3, 0, 4}, {5, 6, 0}});
+
+        var resultA = unit.get(a, AnalysisCache.Analysis.beatPaths());
+        unit.get(b, AnalysisCache.Analysis.beatPaths());
+        // Use a so that b is least recently used
+        assertSame(resultA, unit.get(a, AnalysisCache.Analysis.beatPaths()));
+        unit.get(c, AnalysisCache.Analysis.beatPaths());
+
+        assertEquals(2, unit.size());
+        assertEquals(1, unit.getEvictions());
+        assertSame(resultA, unit.get(a, AnalysisCache.Analysis.beatPaths()));
+        assertEquals(2, unit.getHits());
+    }
+
+    @Test
+    public void testStreamingTally() {
+        AnalysisCache<String, Fraction> unit = new AnalysisCache<>(10);
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var tally = new StreamingTally<>(OPTIONS, FractionField.getInstance(), new Fraction(10));
+
+        tally.add(List.of(builder.ballot(List.of(1,2,3)), builder.ballot(List.of(2,1,3))));
+        assertEquals(tally.getMatrix().fingerprint(), tally.fingerprint());
+        var first = unit.get(tally, AnalysisCache.Analysis.beatPaths());
+        assertSame(first, unit.get(tally, AnalysisCache.Analysis.beatPaths()));
+
+        tally.add(List.of(builder.ballot(List.of(3,1,2))));
+        assertEquals(tally.getMatrix().fingerprint(), tally.fingerprint());
+        assertNotSame(first, unit.get(tally, AnalysisCache.Analysis.beatPaths()));
+        assertEquals(1, unit.getHits());
+        assertEquals(2, unit.getMisses());
+    }
+
+    @Test
+    public void testSharedSnapshots() {
+        AnalysisCache<String, Fraction> unit = new AnalysisCache<>(2);
+        AnalysisCache.Analysis<String, Fraction, PreferenceMatrix<String, Fraction>> first =
+                AnalysisCache.Analysis.of("first", m->m);
+        AnalysisCache.Analysis<String, Fraction, PreferenceMatrix<String, Fraction>> second =
+                AnalysisCache.Analysis.of("second", m->m);
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var tally = new StreamingTally<>(OPTIONS, FractionField.getInstance(), new Fraction(10));
+        tally.add(List.of(builder.ballot(List.of(1,2,3))));
+
+        // Analyses of the same counts are computed from one copy of them
+        var snapshot = unit.get(tally, first);
+        assertSame(snapshot, unit.get(tally, second));
+        assertSame(snapshot, unit.get(tally.getMatrix(), second));
+        assertEquals(1, unit.snapshots());
+        assertEquals(tally.getMatrix().getData(), snapshot.getData());
+
+        tally.add(List.of(builder.ballot(List.of(3,2,1))));
+        var next = unit.get(tally, first);
+        assertNotSame(snapshot, next);
+        assertSame(next, unit.get(tally, first));
+        assertEquals(2, unit.snapshots());
+
+        // The first snapshot goes once both of its results are evicted
+        unit.get(tally, second);
+        assertEquals(1, unit.snapshots());
+        assertEquals(2, unit.size());
+        unit.clear();
+        assertEquals(0, unit.snapshots());
+    }
+
+    @Test
+    public void testCollidingEntryHashes() {
+        AnalysisCache<String, Fraction> unit = new AnalysisCache<>(10);
+        assertEquals(new Fraction(2).hashCode(), new Fraction(1, 38).hashCode());
+        var m1 = new PreferenceMatrix<>(List.of("A", "B"), MatrixUtils.createFieldMatrix(new Fraction[][] {
+            {Fraction.ZERO, new Fraction(2)},
+            {Fraction.ONE_HALF, Fraction.ZERO},
+        }));
+        var m2 = new PreferenceMatrix<>(List.of("A", "B"), MatrixUtils.createFieldMatrix(new Fraction[][] {
+            {Fraction.ZERO, new Fraction(1, 38)},
+            {Fraction.ONE_HALF, Fraction.ZERO},
+        }));
+
+        assertNotEquals(m1.fingerprint(), m2.fingerprint());
+        assertEquals(List.of(Set.of("A"), Set.of("B")), unit.get(m1, AnalysisCache.Analysis.optionsByPreference()));
+        assertEquals(List.of(Set.of("B"), Set.of("A")), unit.get(m2, AnalysisCache.Analysis.optionsByPreference()));
+    }
+
+    @Test
+    public void testCollidingFingerprints() {
+        // Counts of other types are fingerprinted by their hashCode, and these two collide
+        var one = new Decimal64(1.0);
+        var tiny = new Decimal64(Double.longBitsToDouble(0x3ff00000L));
+        assertEquals(one.hashCode(), tiny.hashCode());
+        var half = new Decimal64(0.5);
+        var m1 = new PreferenceMatrix<>(List.of("A", "B"), MatrixUtils.createFieldMatrix(new Decimal64[][] {
+            {Decimal64.ZERO, one},
+            {half, Decimal64.ZERO},
+        }));
+        var m2 = new PreferenceMatrix<>(List.of("A", "B"), MatrixUtils.createFieldMatrix(new Decimal64[][] {
+            {Decimal64.ZERO, tiny},
+            {half, Decimal64.ZERO},
+        }));
+        assertEquals(m1.fingerprint(), m2.fingerprint());
+
+        AnalysisCache<String, Decimal64> unit = new AnalysisCache<>(10);
+        assertEquals(List.of(Set.of("A"), Set.of("B")), unit.get(m1, AnalysisCache.Analysis.optionsByPreference()));
+        assertEquals(List.of(Set.of("B"), Set.of("A")), unit.get(m2, AnalysisCache.Analysis.optionsByPreference()));
+        assertEquals(List.of(Set.of("B"), Set.of("A")), unit.get(m2, AnalysisCache.Analysis.optionsByPreference()));
+        assertEquals(1, unit.getHits());
+        assertEquals(2, unit.getMisses());
+    }
+}
@@ -0,0 +1,101 @@
+package ca.draconic.vote;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.math3.fraction.Fraction;
+import org.apache.commons.math3.fraction.FractionField;
+import org.junit.jupiter.api.Test;
+
+import ca.draconic.vote.BallotValidator.RawBallot;
+import ca.draconic.vote.BallotValidator.Reason;
+
+public class BallotValidatorTest {
+
+    static final List<String> OPTIONS = List.of("A", "B", "C", "D");
+
+    static RawBallot<Fraction> raw(int[] options, int[] ranks) {
+        return new RawBallot<>(options, ranks, Fraction.ONE);
+    }
+
+    @Test
+    public void testNormalise() {
+        var unit = new BallotValidator<>(OPTIONS, FractionField.getInstance(), false);
+        var result = unit.validate(List.of(
+                raw(new int[] {2, 0, 1, 3}, new int[] {10, 20, 20, 45}),
+                raw(new int[] {3, 1}, new int[] {7, 3}),
+                raw(new int[] {}, new int[] {})));
+
+        assertEquals(List.of(), result.getRejections());
+        var ballots = result.getBallots();
+        assertEquals(3, ballots.size());
+        assertArrayEquals(new int[] {2, 2, 1, 3}, ballots.get(0).ranks(unit.getOptions()));
+        // Unmarked options are tied last
+        assertArrayEquals(new int[] {3, 1, 3, 2}, ballots.get(1).ranks(unit.getOptions()));
+        assertArrayEquals(new int[] {1, 1, 1, 1}, ballots.get(2).ranks(unit.getOptions()));
+        assertSame(unit.getOptions(), ballots.get(0).options);
+    }
+
+    @Test
+    public void testRejections() {
+        var unit = new BallotValidator<>(OPTIONS, FractionField.getInstance(), true);
+        var result = unit.validate(List.of(
+                raw(new int[] {0, 1, 2, 3}, new int[] {1, 2, 3, 4}),
+                raw(new int[] {0, 1, 2, 4}, new int[] {1, 2, 3, 4}),
+                raw(new int[] {0, 1, 1, 3}, new int[] {1, 2, 3, 4}),
+                raw(new int[] {0, 1, 2, 3}, new int[] {1, 0, 3, 4}),
+                raw(new int[] {0, 1, 2}, new int[] {1, 2, 3}),
+                new RawBallot<>(new int[] {0, 1, 2, 3}, new int[] {1, 2, 3, 4}, new Fraction(-1)),
+                unit.raw(List.of("A", "B", "C", "E"), new int[] {1, 2, 3, 4}, Fraction.ONE),
+                unit.raw(List.of("D", "C", "B", "A"), new int[] {1, 2, 3, 4}, Fraction.ONE),
+                RawBallot.malformed(new IllegalArgumentException("Blank record"))));
+
+        assertEquals(2, result.getBallots().size());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 8L),
+                result.getRejections().stream().map(r->r.getPosition()).collect(Collectors.toList()));
+        assertEquals(List.of(Reason.UNKNOWN_OPTION, Reason.REPEATED_OPTION, Reason.INVALID_RANK,
+                Reason.INCOMPLETE, Reason.INVALID_WEIGHT, Reason.UNKNOWN_OPTION, Reason.MALFORMED),
+                result.getRejections().stream().map(r->r.getReason()).collect(Collectors.toList()));
+        assertArrayEquals(new int[] {4, 3, 2, 1}, result.getBallots().get(1).ranks(unit.getOptions()));
+
+        assertThrows(IllegalArgumentException.class, ()->raw(new int[] {0}, new int[] {}));
+    }
+
+    @Test
+    public void testValidateAll() {
+        var unit = new BallotValidator<>(OPTIONS, FractionField.getInstance(), false);
+        var batches = new ArrayList<List<RawBallot<Fraction>>>();
+        for (int b=0; b<20; b++) {
+            var batch = new ArrayList<RawBallot<Fraction>>();
+            for (int k=0; k<50; k++) {
+                // Every seventh ballot repeats an option
+                int[] options = (b*50+k)%7==0 ? new int[] {k%4, k%4} : new int[] {k%4, (k+1)%4};
+                batch.add(raw(options, new int[] {1, 2}));
+            }
+            batches.add(batch);
+        }
+        var result = unit.validateAll(batches);
+
+        var expected = batches.stream()
+                .map(unit::validate)
+                .flatMap(r->r.getBallots().stream())
+                .map(ballot->ballot.ranks(unit.getOptions()))
+                .collect(Collectors.toList());
+        assertEquals(1000-143, result.getBallots().size());
+        for (int i=0; i<expected.size(); i++) {
+            assertArrayEquals(expected.get(i), result.getBallots().get(i).ranks(unit.getOptions()));
+        }
+        var rejections = result.getRejections();
+        assertEquals(143, rejections.size());
+        for (int i=0; i<rejections.size(); i++) {
+            assertEquals(7L*i, rejections.get(i).getPosition());
+            assertEquals(Reason.REPEATED_OPTION, rejections.get(i).getReason());
+        }
+    }
+}
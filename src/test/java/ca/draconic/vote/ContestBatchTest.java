@@ -0,0 +1,102 @@
+package ca.draconic.vote;
+
+import static ca.draconic.vote.Fixtures.OPTIONS5;
+import static ca.draconic.vote.Fixtures.SCHULZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ContestBatchTest {
+
+    @Test
+    public void testSchulzeExample() {
+        var unit = ContestBatch.<String>builder()
+                .add(List.of("X","Y"), new int[][] {{0, 3}, {1, 0}})
+                .add(OPTIONS5, SCHULZE)
+                .build();
+
+        assertEquals(2, unit.size());
+        assertEquals(Set.of("X"), unit.get(0).getWinners());
+
+        var contest = unit.get(1);
+        var expected = PreferenceMatrix.fromArray(OPTIONS5, SCHULZE).beatPaths();
+        for (int i=0; i<5; i++) {
+            for (int j=0; j<5; j++) {
+                assertEquals(expected.getData().getEntry(i, j).doubleValue(), contest.getBeatPath(i, j));
+            }
+        }
+        assertEquals(Set.of("E"), contest.getWinners());
+        Assertions.assertIterableEquals(expected.optionsByPreference(), contest.optionsByPreference());
+    }
+
+    @Test
+    public void testMatchesPreferenceMatrix() {
+        var random = new Random(31);
+        var builder = ContestBatch.<Integer>builder();
+        var matrices = new ArrayList<PreferenceMatrix<Integer, ?>>();
+        for (int k=0; k<200; k++) {
+            int C = 3+random.nextInt(6);
+            var options = IntStream.range(0, C).boxed()
+                    .collect(Collectors.toList());
+            int[][] count = new int[C][C];
+            for (int i=0; i<C; i++) {
+                for (int j=i+1; j<C; j++) {
+                    count[i][j] = random.nextInt(100);
+                    count[j][i] = random.nextInt(100);
+                }
+            }
+            builder.add(options, count);
+            matrices.add(PreferenceMatrix.fromArray(options, count).beatPaths());
+        }
+        var unit = builder.build();
+        for (int k=0; k<matrices.size(); k++) {
+            var beatPaths = matrices.get(k);
+            var contest = unit.get(k);
+            final int C = beatPaths.getOptions().size();
+            for (int i=0; i<C; i++) {
+                for (int j=0; j<C; j++) {
+                    assertEquals(beatPaths.isWin(i, j), contest.isWin(i, j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidCounts() {
+        var builder = ContestBatch.<String>builder();
+        assertThrows(IllegalArgumentException.class,
+                ()->builder.add(List.of("A","B"), new int[][] {{1, 0}, {0, 0}}));
+        assertThrows(IllegalArgumentException.class,
+                ()->builder.add(List.of("A","B"), new double[] {0, 1, 1}));
+        assertThrows(IllegalArgumentException.class,
+                ()->builder.add(Arrays.asList("A","B","A"), new double[9]));
+    }
+
+    @Test
+    public void testLookupByOption() {
+        var unit = ContestBatch.<String>builder()
+                .add(OPTIONS5, SCHULZE)
+                .add(OptionRegistry.of("X","Y"), new int[][] {{0, 3}, {1, 0}})
+                .build();
+
+        var contest = unit.get(0);
+        assertEquals(OPTIONS5, contest.getOptions());
+        assertEquals(4, contest.getIndex("E"));
+        assertEquals(28.0, contest.getBeatPath("A", "C"));
+        assertEquals(25.0, contest.getBeatPath("E", "A"));
+        assertThrows(NoSuchElementException.class, ()->contest.getIndex("X"));
+
+        assertEquals(3.0, unit.get(1).getBeatPath("X", "Y"));
+    }
+}
@@ -0,0 +1,143 @@
+package ca.draconic.vote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.math3.fraction.Fraction;
+import org.apache.commons.math3.fraction.FractionField;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DurableTallyTest {
+
+    static final List<String> OPTIONS = List.of("A", "B", "C");
+
+    @TempDir
+    Path directory;
+
+    private List<RankedBallot<String, Fraction>> batch(List<List<Integer>> ranks) {
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        return ranks.stream().map(builder::ballot).collect(Collectors.toList());
+    }
+
+    private DurableTally<String, Fraction> open(int interval) throws Exception {
+        return DurableTally.open(directory, OPTIONS, FractionField.getInstance(), CountFormat.FRACTION, interval);
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        var batches = List.of(
+                batch(List.of(List.of(1,2,3), List.of(1,3,2))),
+                batch(List.of(List.of(2,1,1))),
+                batch(List.of(List.of(3,2,1), List.of(1,2,3), List.of(2,1,3))),
+                batch(List.of(List.of(1,1,2))));
+        var expected = PreferenceMatrix.weightedPreferential(OPTIONS,
+                batches.stream().flatMap(List::stream).collect(Collectors.toList()),
+                FractionField.getInstance());
+
+        try (var unit = open(3)) {
+            for (var batch : batches) {
+                unit.add(batch);
+            }
+            assertEquals(7, unit.getOffset());
+            assertEquals(expected.getData(), unit.getMatrix().getData());
+        }
+        // Three batches in the checkpoint and one in the log
+        try (var unit = open(3)) {
+            assertEquals(7, unit.getOffset());
+            assertEquals(expected.getData(), unit.getMatrix().getData());
+            unit.checkpoint();
+        }
+        try (var unit = open(3)) {
+            assertEquals(7, unit.getOffset());
+            assertEquals(expected.getData(), unit.getMatrix().getData());
+        }
+    }
+
+    @Test
+    public void testTornLogEntry() throws Exception {
+        var first = batch(List.of(List.of(1,2,3)));
+        try (var unit = open(10)) {
+            unit.add(first);
+            unit.add(batch(List.of(List.of(3,2,1))));
+        }
+        // Lose the end of the second entry
+        try (var log = FileChannel.open(directory.resolve(DurableTally.LOG), StandardOpenOption.WRITE)) {
+            log.truncate(log.size()-3);
+        }
+        try (var unit = open(10)) {
+            assertEquals(1, unit.getOffset());
+            assertEquals(PreferenceMatrix.weightedPreferential(OPTIONS, first, FractionField.getInstance()).getData(),
+                    unit.getMatrix().getData());
+            // Counting carries on from the last complete batch
+            unit.add(batch(List.of(List.of(2,1,3))));
+            assertEquals(2, unit.getOffset());
+        }
+        try (var unit = open(10)) {
+            assertEquals(2, unit.getOffset());
+            assertEquals(Fraction.ONE, unit.getMatrix().get("A", "B").getPreferA());
+            assertEquals(Fraction.ONE, unit.getMatrix().get("A", "B").getPreferB());
+        }
+    }
+
+    @Test
+    public void testLogEntriesBeforeCheckpointSkipped() throws Exception {
+        try (var unit = open(10)) {
+            unit.add(batch(List.of(List.of(1,2,3))));
+            var log = Files.readAllBytes(directory.resolve(DurableTally.LOG));
+            unit.checkpoint();
+            // As if the log were not cleared after the checkpoint
+            Files.write(directory.resolve(DurableTally.LOG), log);
+        }
+        try (var unit = open(10)) {
+            assertEquals(1, unit.getOffset());
+            assertEquals(Fraction.ONE, unit.getMatrix().get("A", "B").getPreferA());
+        }
+    }
+
+    @Test
+    public void testOffsetMustIncrease() throws Exception {
+        try (var unit = open(10)) {
+            unit.add(batch(List.of(List.of(1,2,3))), 5);
+            assertThrows(IllegalArgumentException.class, ()->unit.add(batch(List.of(List.of(1,2,3))), 5));
+        }
+    }
+
+    @Test
+    public void testReopenWithOtherOptions() throws Exception {
+        try (var unit = open(1)) {
+            unit.add(batch(List.of(List.of(1,2,3))));
+        }
+        // Same number of options in another order
+        assertThrows(IOException.class, ()->DurableTally.open(directory, List.of("C", "B", "A"),
+                FractionField.getInstance(), CountFormat.FRACTION, 1));
+        assertThrows(IOException.class, ()->DurableTally.open(directory, List.of("A", "B", "D"),
+                FractionField.getInstance(), CountFormat.FRACTION, 1));
+        try (var unit = open(1)) {
+            assertEquals(1, unit.getOffset());
+        }
+    }
+
+    @Test
+    public void testReplayWithOtherOptions() throws Exception {
+        try (var unit = open(10)) {
+            unit.add(batch(List.of(List.of(3,2,1))));
+        }
+        // No checkpoint yet, so only the log records the options
+        assertThrows(IOException.class, ()->DurableTally.open(directory, List.of("C", "B", "A"),
+                FractionField.getInstance(), CountFormat.FRACTION, 10));
+        assertThrows(IOException.class, ()->DurableTally.open(directory, List.of("A", "B"),
+                FractionField.getInstance(), CountFormat.FRACTION, 10));
+        try (var unit = open(10)) {
+            assertEquals(Fraction.ONE, unit.getMatrix().get("C", "A").getPreferA());
+        }
+    }
+}
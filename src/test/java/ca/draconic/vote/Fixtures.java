@@ -0,0 +1,45 @@
+package ca.draconic.vote;
+
+import java.util.List;
+
+/**
+ * Preference matrices shared between tests
+ */
+final class Fixtures {
+
+    static final List<String> OPTIONS3 = List.of("A","B","C");
+
+    /**
+     * A is the Condorcet winner, beating C by the narrowest margin
+     */
+    static final int[][] CONDORCET = {
+        {0, 20, 15},
+        {5, 0, 9},
+        {10, 16, 0},
+    };
+
+    static final List<String> OPTIONS5 = List.of("A","B","C","D","E");
+
+    // Example from the Wikipedia article https://en.wikipedia.org/wiki/Schulze_method
+    static final int[][] SCHULZE = {
+        {0, 20, 26, 30, 22},
+        {25, 0, 16, 33, 18},
+        {19, 29, 0, 17, 24},
+        {15, 12, 28, 0, 14},
+        {23, 27, 21, 31, 0},
+    };
+
+    /**
+     * Strongest paths of {@link #SCHULZE}
+     */
+    static final int[][] SCHULZE_BEAT_PATHS = {
+        {0, 28, 28, 30, 24},
+        {25, 0, 28, 33, 24},
+        {25, 29, 0, 29, 24},
+        {25, 28, 28, 0, 24},
+        {25, 28, 28, 31, 0},
+    };
+
+    private Fixtures() {
+    }
+}
@@ -0,0 +1,203 @@
+package ca.draconic.vote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.apache.commons.math3.fraction.Fraction;
+import org.apache.commons.math3.fraction.FractionField;
+import org.junit.jupiter.api.Test;
+
+import ca.draconic.vote.BallotValidator.RawBallot;
+import ca.draconic.vote.BallotValidator.Reason;
+import ca.draconic.vote.BallotValidator.Rejection;
+
+public class IngestPipelineTest {
+
+    static final List<String> OPTIONS = List.of("A", "B", "C");
+
+    static RawBallot<Fraction> decode(String record) {
+        // Options in order of preference, such as "B,A,C"
+        var marked = List.of(record.split(","));
+        int[] ranks = new int[marked.size()];
+        for (int i=0; i<ranks.length; i++) {
+            ranks[i] = i+1;
+        }
+        return new BallotValidator<>(OPTIONS, FractionField.getInstance(), false)
+                .raw(marked, ranks, Fraction.ONE);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        var validator = new BallotValidator<>(OPTIONS, FractionField.getInstance(), false);
+        var records = new ArrayList<String>();
+        var patterns = List.of("A,B,C", "B,A,C", "C,B,A", "A,C", "A,A,B", "A,D");
+        for (int i=0; i<10_000; i++) {
+            records.add(patterns.get(i%patterns.size()));
+        }
+        var rejected = new AtomicInteger();
+        var unit = IngestPipeline.builder(validator, IngestPipelineTest::decode)
+                .batchSize(64)
+                .queueCapacity(2)
+                .onRejection(rejection->rejected.incrementAndGet())
+                .build();
+
+        var result = unit.run(records.iterator());
+
+        var expected = PreferenceMatrix.weightedPreferential(OPTIONS, validator.validate(
+                records.stream().map(IngestPipelineTest::decode).collect(Collectors.toList())).getBallots(),
+                FractionField.getInstance());
+        assertEquals(expected.getData(), result.getMatrix().getData());
+        assertEquals(new Fraction(3334), result.getMatrix().get("A", "B").getPreferA());
+        assertEquals(Map.of(Reason.REPEATED_OPTION, 1666L, Reason.UNKNOWN_OPTION, 1666L), result.getRejections());
+        assertEquals(3332, rejected.get());
+
+        var stages = result.getStages();
+        assertEquals(List.of("read", "decode", "validate", "group", "tally"),
+                stages.stream().map(IngestPipeline.Stage::getName).collect(Collectors.toList()));
+        assertEquals(10_000, stages.get(0).getItems());
+        assertEquals(157, stages.get(0).getBatches());
+        assertEquals(10_000, stages.get(2).getItems());
+        assertEquals(10_000-3332, stages.get(3).getItems());
+        // Each batch holds at most four distinct rankings once grouped
+        assertEquals(true, stages.get(4).getItems()<=4*157);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        var validator = new BallotValidator<>(OPTIONS, FractionField.getInstance(), false);
+        var unit = IngestPipeline.builder(validator, IngestPipelineTest::decode).build();
+
+        var result = unit.run(List.<String>of().iterator());
+        assertEquals(new PreferenceMatrix<>(OPTIONS, FractionField.getInstance()).getData(),
+                result.getMatrix().getData());
+        assertEquals(Map.of(), result.getRejections());
+    }
+
+    @Test
+    public void testMalformedRecords() throws Exception {
+        var validator = new BallotValidator<>(OPTIONS, FractionField.getInstance(), false);
+        var records = new ArrayList<String>();
+        for (int i=0; i<10_000; i++) {
+            records.add(i==5000 ? "" : i==5001 ? "A,A" : "A,B,C");
+        }
+        var rejections = new ArrayList<Rejection<Fraction>>();
+        var unit = IngestPipeline.builder(validator, (String record)->{
+                    if (record.isEmpty()) {
+                        throw new IllegalArgumentException("Blank record");
+                    }
+                    return decode(record);
+                })
+                .batchSize(16)
+                .queueCapacity(1)
+                .onRejection(rejections::add)
+                .build();
+
+        var result = unit.run(records.iterator());
+        assertEquals(new Fraction(9998), result.getMatrix().get("A", "B").getPreferA());
+        assertEquals(Map.of(Reason.MALFORMED, 1L, Reason.REPEATED_OPTION, 1L), result.getRejections());
+        assertEquals(5000, rejections.get(0).getPosition());
+        assertEquals(Reason.MALFORMED, rejections.get(0).getReason());
+        assertEquals("Blank record", rejections.get(0).getFailure().get().getMessage());
+        assertEquals(5001, rejections.get(1).getPosition());
+        assertEquals(Optional.empty(), rejections.get(1).getFailure());
+
+        assertThrows(IllegalArgumentException.class, ()->IngestPipeline.builder(validator, IngestPipelineTest::decode).batchSize(0));
+    }
+
+    @Test
+    public void testSourceFailure() throws Exception {
+        var validator = new BallotValidator<>(OPTIONS, FractionField.getInstance(), false);
+        var records = new Iterator<String>() {
+            int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (i==5000) {
+                    throw new UncheckedIOException(new IOException("Connection reset"));
+                }
+                return true;
+            }
+
+            @Override
+            public String next() {
+                i++;
+                return "A,B,C";
+            }
+        };
+        var unit = IngestPipeline.builder(validator, IngestPipelineTest::decode)
+                .batchSize(16)
+                .queueCapacity(1)
+                .build();
+
+        var e = assertThrows(UncheckedIOException.class, ()->unit.run(records));
+        assertEquals("Connection reset", e.getCause().getMessage());
+    }
+
+    @Test
+    public void testInterrupted() throws Exception {
+        var validator = new BallotValidator<>(OPTIONS, FractionField.getInstance(), false);
+        var reading = new CountDownLatch(1);
+        var records = new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                reading.countDown();
+                try {
+                    Thread.sleep(Long.MAX_VALUE);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("Source interrupted", e);
+                }
+                return false;
+            }
+
+            @Override
+            public String next() {
+                throw new NoSuchElementException();
+            }
+        };
+        var stages = new ConcurrentLinkedQueue<Thread>();
+        var unit = IngestPipeline.builder(validator, IngestPipelineTest::decode)
+                .threadFactory(task->{
+                    var thread = new Thread(task);
+                    stages.add(thread);
+                    return thread;
+                })
+                .build();
+
+        var outcome = new AtomicReference<Throwable>();
+        var caller = new Thread(()->{
+            try {
+                unit.run(records);
+            } catch (Throwable e) {
+                outcome.set(e);
+            }
+        });
+        caller.start();
+        reading.await();
+        caller.interrupt();
+        caller.join(10_000);
+
+        assertFalse(caller.isAlive());
+        assertTrue(outcome.get() instanceof InterruptedException, String.valueOf(outcome.get()));
+        // Every stage has stopped by the time run returns
+        assertEquals(5, stages.size());
+        for (Thread stage : stages) {
+            assertFalse(stage.isAlive(), stage.toString());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package ca.draconic.vote;
+
+import static ca.draconic.vote.Fixtures.OPTIONS5;
+import static ca.draconic.vote.Fixtures.SCHULZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class KemenyYoungTest {
+
+    @Test
+    public void testSchulzeExample() {
+        var matrix = PreferenceMatrix.fromArray(OPTIONS5, SCHULZE);
+        var result = KemenyYoung.ranking(matrix);
+
+        assertEquals(bruteForce(matrix), KemenyYoung.score(matrix, result));
+        assertEquals(new HashSet<>(OPTIONS5), new HashSet<>(result));
+    }
+
+    @Test
+    public void testCondorcetOrder() {
+        // No cycles, so the ranking follows the pairwise preferences
+        var options = List.of("A","B","C","D");
+        var matrix = PreferenceMatrix.fromArray(options, new int[][] {
+            {0, 4, 2, 9},
+            {6, 0, 8, 7},
+            {8, 2, 0, 6},
+            {1, 3, 4, 0},
+        });
+
+        assertEquals(List.of("B","C","A","D"), KemenyYoung.ranking(matrix));
+    }
+
+    @Test
+    public void testRandomMatchesBruteForce() {
+        var random = new Random(26);
+        for (int trial=0; trial<20; trial++) {
+            int n = 3+trial%6;
+            var options = IntStream.range(0, n).boxed().collect(Collectors.toList());
+            int[][] counts = new int[n][n];
+            for (int i=0; i<n; i++) {
+                for (int j=i+1; j<n; j++) {
+                    counts[i][j] = random.nextInt(20);
+                    counts[j][i] = 20-counts[i][j];
+                }
+            }
+            var matrix = PreferenceMatrix.fromArray(options, counts);
+
+            assertEquals(bruteForce(matrix), KemenyYoung.score(matrix, KemenyYoung.ranking(matrix)),
+                    "trial "+trial);
+        }
+    }
+
+    @Test
+    public void testLargeNoisyContest() {
+        // 20 options in one cycle-riddled component, checked against dynamic programming over
+        // subsets of options
+        final int n = 20;
+        var random = new Random(30);
+        var options = IntStream.range(0, n).boxed().collect(Collectors.toList());
+        int[][] counts = new int[n][n];
+        for (int i=0; i<n; i++) {
+            for (int j=i+1; j<n; j++) {
+                // Mostly follows the index order, with many upsets between nearby options
+                counts[i][j] = 50+random.nextInt(41)-(j-i<4 ? 20 : 8)*(random.nextInt(3)==0 ? 1 : -1)-(j-i);
+                counts[j][i] = 100-counts[i][j];
+            }
+        }
+        var matrix = PreferenceMatrix.fromArray(options, counts);
+        assertEquals(1, KemenyYoung.components(matrix.toDoubleArray()).size());
+
+        assertEquals(subsetOptimum(counts), KemenyYoung.score(matrix, KemenyYoung.ranking(matrix)));
+    }
+
+    @Test
+    public void testComponentTooLarge() {
+        int n = KemenyYoung.MAX_COMPONENT+1;
+        var options = IntStream.range(0, n).boxed().collect(Collectors.toList());
+        // Every option ties every other
+        int[][] counts = new int[n][n];
+        for (int[] row : counts) {
+            Arrays.fill(row, 1);
+        }
+        for (int i=0; i<n; i++) {
+            counts[i][i] = 0;
+        }
+        var matrix = PreferenceMatrix.fromArray(options, counts);
+        assertThrows(IllegalArgumentException.class, ()->KemenyYoung.ranking(matrix));
+    }
+
+    /**
+     * Best score of any ranking, found by ranking each subset of options first
+     */
+    private static double subsetOptimum(int[][] counts) {
+        final int n = counts.length;
+        double[] best = new double[1<<n];
+        for (int placed=1; placed<1<<n; placed++) {
+            best[placed] = Double.NEGATIVE_INFINITY;
+            for (int last=0; last<n; last++) {
+                if ((placed & 1<<last)!=0) {
+                    double score = best[placed & ~(1<<last)];
+                    for (int u=0; u<n; u++) {
+                        if ((placed & 1<<u)==0) {
+                            score += counts[last][u];
+                        }
+                    }
+                    best[placed] = Math.max(best[placed], score);
+                }
+            }
+        }
+        return best[(1<<n)-1];
+    }
+
+    private static <Option> double bruteForce(PreferenceMatrix<Option, ?> matrix) {
+        var options = new ArrayList<>(matrix.getOptions());
+        return permutations(options, 0, matrix);
+    }
+
+    private static <Option> double permutations(List<Option> options, int k,
+            PreferenceMatrix<Option, ?> matrix) {
+        if (k==options.size()) {
+            return score(matrix, options);
+        }
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i=k; i<options.size(); i++) {
+            Collections.swap(options, k, i);
+            best = Math.max(best, permutations(options, k+1, matrix));
+            Collections.swap(options, k, i);
+        }
+        return best;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static double score(PreferenceMatrix matrix, List options) {
+        return KemenyYoung.score(matrix, options);
+    }
+}
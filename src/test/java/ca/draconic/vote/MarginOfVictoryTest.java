@@ -0,0 +1,107 @@
+package ca.draconic.vote;
+
+import static ca.draconic.vote.Fixtures.CONDORCET;
+import static ca.draconic.vote.Fixtures.OPTIONS3;
+import static ca.draconic.vote.Fixtures.OPTIONS5;
+import static ca.draconic.vote.Fixtures.SCHULZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import org.apache.commons.math3.fraction.Fraction;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.junit.jupiter.api.Test;
+
+public class MarginOfVictoryTest {
+
+    @Test
+    public void testCondorcet() {
+        var matrix = PreferenceMatrix.fromArray(OPTIONS3, CONDORCET);
+        var unit = MarginOfVictory.condorcet(matrix).get();
+
+        assertEquals("A", unit.getWinner());
+        assertEquals("C", unit.getRival());
+        assertEquals(3, unit.getLowerBound());
+        assertEquals(OptionalLong.of(3), unit.getUpperBound());
+        assertTrue(unit.isExact());
+    }
+
+    @Test
+    public void testNoCondorcetWinner() {
+        var matrix = PreferenceMatrix.fromArray(OPTIONS5, SCHULZE);
+        assertEquals(Optional.empty(), MarginOfVictory.condorcet(matrix));
+    }
+
+    @Test
+    public void testSchulze() {
+        var matrix = PreferenceMatrix.fromArray(OPTIONS5, SCHULZE);
+        var unit = MarginOfVictory.schulze(matrix).get();
+
+        assertEquals("E", unit.getWinner());
+        assertEquals("A", unit.getRival());
+        assertEquals("A", unit.getLowerBoundRival());
+        assertEquals(1, unit.getLowerBound());
+        assertEquals(OptionalLong.of(3), unit.getUpperBound());
+        assertFalse(unit.isExact());
+        assertEquals("MarginOfVictory [E over A: 1 to 3]", unit.toString());
+
+        // Flipping the upper bound's worth of ballots against the rival unseats the winner
+        int w = matrix.getIndex(unit.getWinner());
+        int r = matrix.getIndex(unit.getRival());
+        long k = unit.getUpperBound().getAsLong();
+        assertFalse(isStrictWinner(flip(SCHULZE, w, r, (int) k), w));
+        assertTrue(isStrictWinner(flip(SCHULZE, w, r, (int) k-1), w));
+    }
+
+    @Test
+    public void testSchulzeAgreesWithCondorcet() {
+        var matrix = PreferenceMatrix.fromArray(OPTIONS3, CONDORCET);
+        var unit = MarginOfVictory.schulze(matrix).get();
+
+        assertEquals("A", unit.getWinner());
+        assertEquals("C", unit.getRival());
+        assertEquals("C", unit.getLowerBoundRival());
+        assertEquals(3, unit.getLowerBound());
+        assertEquals(OptionalLong.of(3), unit.getUpperBound());
+        assertTrue(unit.isExact());
+    }
+
+    @Test
+    public void testSingleOption() {
+        var matrix = PreferenceMatrix.fromArray(List.of("A"), new int[][] {{0}});
+        assertEquals(Optional.empty(), MarginOfVictory.schulze(matrix));
+        assertEquals(Optional.empty(), MarginOfVictory.condorcet(matrix));
+    }
+
+    @Test
+    public void testFractionalCounts() {
+        var matrix = new PreferenceMatrix<>(List.of("A","B"), MatrixUtils.createFieldMatrix(new Fraction[][] {
+            {Fraction.ZERO, Fraction.ONE_HALF},
+            {Fraction.ZERO, Fraction.ZERO},
+        }));
+        assertThrows(IllegalArgumentException.class, ()->MarginOfVictory.condorcet(matrix));
+    }
+
+    private static int[][] flip(int[][] d, int w, int r, int k) {
+        int[][] result = Arrays.stream(d).map(int[]::clone).toArray(int[][]::new);
+        result[w][r] -= k;
+        result[r][w] += k;
+        return result;
+    }
+
+    private static boolean isStrictWinner(int[][] d, int w) {
+        var beatPaths = PreferenceMatrix.fromArray(OPTIONS5, d).beatPaths();
+        for (int j=0; j<d.length; j++) {
+            if (j!=w && !beatPaths.isWin(w, j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package ca.draconic.vote;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.math3.fraction.FractionField;
+import org.junit.jupiter.api.Test;
+
+public class OptionRegistryTest {
+
+    enum Colour {
+        RED, GREEN, BLUE, YELLOW
+    }
+
+    @Test
+    public void testIndex() {
+        var unit = OptionRegistry.of(List.of("A", "B", "C"));
+
+        assertEquals(0, unit.getIndex("A"));
+        assertEquals(1, unit.getIndex("B"));
+        assertEquals(2, unit.getIndex("C"));
+        assertEquals(-1, unit.indexOf("D"));
+        assertThrows(NoSuchElementException.class, ()->unit.getIndex("D"));
+        assertEquals("B", unit.getOption(1));
+        assertThrows(NoSuchElementException.class, ()->unit.getOption(3));
+        assertEquals(List.of("A", "B", "C"), unit);
+    }
+
+    @Test
+    public void testEnumIndex() {
+        var unit = OptionRegistry.of(Colour.BLUE, Colour.RED, Colour.YELLOW);
+
+        assertEquals(0, unit.getIndex(Colour.BLUE));
+        assertEquals(1, unit.getIndex(Colour.RED));
+        assertEquals(2, unit.getIndex(Colour.YELLOW));
+        assertEquals(-1, unit.indexOf(Colour.GREEN));
+        assertEquals(-1, unit.indexOf("RED"));
+    }
+
+    @Test
+    public void testNotUnique() {
+        assertThrows(IllegalArgumentException.class, ()->OptionRegistry.of("A", "B", "A"));
+        assertThrows(IllegalArgumentException.class, ()->OptionRegistry.of(Colour.RED, Colour.RED));
+    }
+
+    @Test
+    public void testShared() {
+        var unit = OptionRegistry.of("A", "B", "C");
+        assertSame(unit, OptionRegistry.of(unit));
+
+        var matrix = new PreferenceMatrix<>(unit, FractionField.getInstance());
+        assertSame(unit, matrix.getOptions());
+        assertSame(unit, matrix.margins().getOptions());
+        assertSame(unit, matrix.beatPaths().getOptions());
+
+        var builder = RankedBallot.builder(unit, FractionField.getInstance());
+        assertSame(unit, builder.getOptions());
+    }
+
+    @Test
+    public void testBallotRanks() {
+        var builder = RankedBallot.builder(List.of("A", "B", "C"), FractionField.getInstance());
+        var ballot = builder.ballot(List.of(3, 1, 2));
+
+        assertArrayEquals(new int[] {3, 1, 2}, ballot.ranks(builder.getOptions()));
+        assertArrayEquals(new int[] {2, 3, 1}, ballot.ranks(OptionRegistry.of("C", "A", "B")));
+        assertThrows(NoSuchElementException.class, ()->ballot.ranks(OptionRegistry.of("A", "D")));
+    }
+}
@@ -1,5 +1,9 @@
 package ca.draconic.vote;
 
+import static ca.draconic.vote.Fixtures.CONDORCET;
+import static ca.draconic.vote.Fixtures.OPTIONS3;
+import static ca.draconic.vote.Fixtures.SCHULZE;
+import static ca.draconic.vote.Fixtures.SCHULZE_BEAT_PATHS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -7,6 +11,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -59,21 +64,18 @@ public class PreferenceMatrixTest {
         matrix3x3_valuesOnDiagonal = matrix3x3_test1.copy();
         matrix3x3_valuesOnDiagonal.setEntry(1, 1, Fraction.ONE);
         
-        // Examples from the Wikipedia article https://en.wikipedia.org/wiki/Schulze_method
-        matrix5x5_test2 = MatrixUtils.createFieldMatrix(new Fraction[][] {
-            {f(0), f(20), f(26), f(30), f(22)},
-            {f(25), f(0), f(16), f(33), f(18)},
-            {f(19), f(29), f(0), f(17), f(24)},
-            {f(15), f(12), f(28), f(0), f(14)},
-            {f(23), f(27), f(21), f(31), f(0)},
-        });
-        matrix5x5_test2_beatpath = MatrixUtils.createFieldMatrix(new Fraction[][] {
-            {f(0), f(28), f(28), f(30), f(24)},
-            {f(25), f(0), f(28), f(33), f(24)},
-            {f(25), f(29), f(0), f(29), f(24)},
-            {f(25), f(28), f(28), f(0), f(24)},
-            {f(25), f(28), f(28), f(31), f(0)},
-        });
+        matrix5x5_test2 = fractions(SCHULZE);
+        matrix5x5_test2_beatpath = fractions(SCHULZE_BEAT_PATHS);
+    }
+
+    private static FieldMatrix<Fraction> fractions(int[][] counts) {
+        var result = MatrixUtils.createFieldMatrix(FractionField.getInstance(), counts.length, counts.length);
+        for (int i=0; i<counts.length; i++) {
+            for (int j=0; j<counts.length; j++) {
+                result.setEntry(i, j, f(counts[i][j]));
+            }
+        }
+        return result;
     }
 
     private static Fraction f(int x) {
@@ -272,5 +274,118 @@ public class PreferenceMatrixTest {
         
         assertEquals(matrix3x3_test1_margins, result.getData());
     }
-
+    
+    @Test
+    public void testLockedWinner() throws Exception {
+        var options = Arrays.asList("A","B","C","D","E");
+        var unit = new PreferenceMatrix<>(options, matrix5x5_test2);
+        
+        // E's weakest beat path margin is 25 against 24 for A
+        assertEquals(Optional.of("E"), unit.lockedWinner(f(0)));
+        assertEquals(Optional.of("E"), unit.lockedWinner(f(1,2)));
+        assertEquals(Optional.empty(), unit.lockedWinner(f(1)));
+        
+        // No Condorcet winner even with nothing left to count
+        assertEquals(Optional.empty(), unit.lockedCondorcetWinner(f(0)));
+        
+        assertThrows(IllegalArgumentException.class, ()->unit.lockedWinner(f(-1)));
+    }
+    
+    @Test
+    public void testLockedCondorcetWinner() throws Exception {
+        var unit = PreferenceMatrix.fromArray(OPTIONS3, CONDORCET);
+        
+        assertEquals(Optional.of("A"), unit.lockedCondorcetWinner(f(4)));
+        assertEquals(Optional.empty(), unit.lockedCondorcetWinner(f(5)));
+        assertEquals(Optional.of("A"), unit.lockedWinner(f(4)));
+    }
+    
+    @Test
+    public void testAnalyse() throws Exception {
+        var options = Arrays.asList("A","B","C");
+        var unit = new PreferenceMatrix<>(options, matrix3x3_test1);
+        var result = unit.analyse();
+        
+        // A beats B narrowly and ties C, C beats B
+        assertEquals(1, result.getWins("A"));
+        assertEquals(1, result.getTies("A"));
+        assertEquals(2, result.getLosses("B"));
+        assertEquals(-2, result.getCopelandScore("B"));
+        assertEquals(Set.of("A","C"), result.getCopelandWinners());
+        assertEquals(100.0, result.getWorstDefeat("B"));
+        assertEquals(0.0, result.getWorstDefeat("C"));
+        assertEquals(Set.of("A","C"), result.getMinimaxWinners());
+        assertEquals(51.0, result.getBordaScore("A"));
+        assertEquals(Set.of("C"), result.getBordaWinners());
+        assertEquals(Optional.empty(), result.getCondorcetWinner());
+        assertEquals(Set.of("A","C"), result.getSchulzeWinners());
+        assertEquals(matrix3x3_test1, unit.getData());
+    }
+    
+    @Test
+    public void testAnalyseBeatPaths() throws Exception {
+        var options = Arrays.asList("A","B","C","D","E");
+        var unit = new PreferenceMatrix<>(options, matrix5x5_test2);
+        var result = unit.analyse();
+        
+        for(String a : options) {
+            for(String b : options) {
+                assertEquals(matrix5x5_test2_beatpath.getEntry(unit.getIndex(a), unit.getIndex(b)).doubleValue(), 
+                        result.getBeatPath(a, b));
+            }
+        }
+        assertEquals(Set.of("E"), result.getSchulzeWinners());
+        assertEquals(Optional.empty(), result.getCondorcetWinner());
+        
+        var condorcet = PreferenceMatrix.fromArray(OPTIONS3, CONDORCET).analyse();
+        assertEquals(Optional.of("A"), condorcet.getCondorcetWinner());
+        assertEquals(Set.of("A"), condorcet.getSchulzeWinners());
+    }
+    
+    @Test
+    public void testMarginsView() throws Exception {
+        var options = Arrays.asList("A","B","C");
+        var data = matrix3x3_test1.copy();
+        var unit = new PreferenceMatrix<>(options, data);
+        var result = unit.marginsView();
+        
+        assertEquals(matrix3x3_test1_margins, result.getData());
+        
+        data.setEntry(0, 2, f(10));
+        assertEquals(f(1), result.get("A", "C").getPreferA());
+        assertThrows(UnsupportedOperationException.class, ()->result.getData().setEntry(0, 1, f(1)));
+    }
+    
+    @Test
+    public void testTransposeView() throws Exception {
+        var options = Arrays.asList("A","B","C");
+        var unit = new PreferenceMatrix<>(options, matrix3x3_test1);
+        var result = unit.transposeView();
+        
+        assertEquals(matrix3x3_test1.transpose(), result.getData());
+        assertPair("A","B", f(41), f(42), result);
+        assertEquals(true, result.isWin("B", "C"));
+    }
+    
+    @Test
+    public void testRestrictTo() throws Exception {
+        var options = Arrays.asList("A","B","C","D","E");
+        var unit = new PreferenceMatrix<>(options, matrix5x5_test2);
+        var result = unit.restrictTo(List.of("E","B","A"));
+        
+        assertEquals(List.of("E","B","A"), result.getOptions());
+        assertEquals(0, result.getIndex("E"));
+        assertPair("E","B", f(27), f(18), result);
+        assertPair("A","B", f(20), f(25), result);
+        assertThrows(NoSuchElementException.class, ()->result.getIndex("C"));
+        assertThrows(NoSuchElementException.class, ()->unit.restrictTo(List.of("A","F")));
+        
+        // Analyses run on the view as on a tallied matrix
+        var expected = new PreferenceMatrix<>(List.of("E","B","A"), MatrixUtils.createFieldMatrix(new Fraction[][] {
+            {f(0), f(27), f(23)},
+            {f(18), f(0), f(25)},
+            {f(22), f(20), f(0)},
+        }));
+        assertEquals(expected.beatPaths().getData(), result.beatPaths().getData());
+    }
 }
@@ -0,0 +1,108 @@
+package ca.draconic.vote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import org.apache.commons.math3.fraction.FractionField;
+import org.junit.jupiter.api.Test;
+
+public class SampledTallyTest {
+
+    static final List<String> OPTIONS = List.of("A", "B", "C");
+
+    @Test
+    public void testExactWhenEverythingSampled() {
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var ballots = List.of(List.of(1,2,3), List.of(1,3,2), List.of(2,1,1), List.of(3,2,1)).stream()
+                .map(builder::ballot)
+                .collect(Collectors.toList());
+        var unit = new SampledTally<>(OPTIONS, FractionField.getInstance(), 10, new SplittableRandom(35));
+        unit.addAll(ballots);
+
+        var estimate = unit.estimate(0.95);
+        assertEquals(PreferenceMatrix.weightedPreferential(OPTIONS, ballots, FractionField.getInstance()).getData(),
+                estimate.getMatrix().getData());
+        assertEquals(1.0, estimate.getScale());
+        var margin = estimate.getMargin("C", "B");
+        assertEquals(1.0, margin.getEstimate());
+        assertEquals(1.0, margin.getLower());
+        assertEquals(1.0, margin.getUpper());
+        assertEquals(Optional.of(Preference.A), estimate.getPreference("C", "B"));
+        assertEquals(Optional.empty(), estimate.getPreference("A", "B"));
+    }
+
+    @Test
+    public void testLargePoll() {
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var abc = builder.ballot(List.of(1,2,3));
+        var bac = builder.ballot(List.of(2,1,3));
+        var cab = builder.ballot(List.of(2,3,1));
+        var unit = new SampledTally<>(OPTIONS, FractionField.getInstance(), 2000, new SplittableRandom(35));
+
+        // 50% A>B>C, 40% B>A>C, 10% C>A>B
+        for (int i=0; i<100_000; i++) {
+            int k = i%10;
+            unit.add(k<5 ? abc : k<9 ? bac : cab);
+        }
+        assertEquals(100_000, unit.getCount());
+        assertEquals(2000, unit.getSampleSize());
+
+        var estimate = unit.estimate(0.99);
+        assertEquals(50.0, estimate.getScale());
+        // True margin of A over B is 20,000 and of B over C is 80,000
+        var ab = estimate.getMargin("A", "B");
+        assertTrue(ab.getLower()<20_000 && ab.getUpper()>20_000, ab.toString());
+        assertTrue(estimate.isConfidentWin("A", "B"));
+        assertTrue(estimate.isConfidentWin("B", "C"));
+        assertEquals(Optional.of(Preference.B), estimate.getPreference("C", "A"));
+        assertEquals(-ab.getEstimate(), estimate.getMargin("B", "A").getEstimate());
+        assertTrue(estimate.getMatrix().isWin("A", "C"));
+    }
+
+    @Test
+    public void testLopsidedPollCoverage() {
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var abc = builder.ballot(List.of(1,2,3));
+        var bac = builder.ballot(List.of(2,1,3));
+
+        // 99% A>B>C and 1% B>A>C, so most samples of 100 are unanimous about A and B.  The true
+        // margin of A over B is 196,000.
+        int covered = 0;
+        int unanimous = 0;
+        for (int seed=0; seed<200; seed++) {
+            var unit = new SampledTally<>(OPTIONS, FractionField.getInstance(), 100, new SplittableRandom(seed));
+            for (int i=0; i<200_000; i++) {
+                unit.add(i%100==0 ? bac : abc);
+            }
+            var estimate = unit.estimate(0.95);
+            var ab = estimate.getMargin("A", "B");
+            if (ab.getLower()<=196_000 && ab.getUpper()>=196_000) {
+                covered++;
+            }
+            if (ab.getEstimate()==200_000) {
+                unanimous++;
+                assertTrue(ab.getLower()<ab.getUpper(), ab.toString());
+            }
+        }
+        assertTrue(unanimous>0);
+        // Allow some sampling error below the 95% aimed for
+        assertTrue(covered>=180, covered+" of 200 intervals covered the margin");
+    }
+
+    @Test
+    public void testCloseContestUndecided() {
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var abc = builder.ballot(List.of(1,2,3));
+        var bac = builder.ballot(List.of(2,1,3));
+        var unit = new SampledTally<>(OPTIONS, FractionField.getInstance(), 500, new SplittableRandom(35));
+        for (int i=0; i<100_000; i++) {
+            unit.add(i%2==0 ? abc : bac);
+        }
+        assertEquals(Optional.empty(), unit.estimate(0.95).getPreference("A", "B"));
+    }
+}
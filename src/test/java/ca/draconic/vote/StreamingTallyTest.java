@@ -0,0 +1,62 @@
+package ca.draconic.vote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.math3.fraction.Fraction;
+import org.apache.commons.math3.fraction.FractionField;
+import org.junit.jupiter.api.Test;
+
+public class StreamingTallyTest {
+
+    static final List<String> OPTIONS = List.of("A", "B", "C");
+
+    @Test
+    public void testDecidedEarly() {
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var unit = new StreamingTally<>(OPTIONS, FractionField.getInstance(), new Fraction(10));
+
+        unit.add(Collections.nCopies(3, builder.ballot(List.of(1,2,3))));
+        assertFalse(unit.isDecided());
+        assertEquals(new Fraction(7), unit.getRemaining());
+
+        unit.add(Collections.nCopies(4, builder.ballot(List.of(1,3,2))));
+        // A leads both B and C by 7 with 3 left to count
+        assertTrue(unit.isDecided());
+        assertEquals(Optional.of("A"), unit.decidedWinner());
+        assertEquals(Optional.of("A"), unit.decidedCondorcetWinner());
+
+        unit.add(Collections.nCopies(3, builder.ballot(List.of(3,1,2))));
+        assertEquals(Optional.of("A"), unit.decidedWinner());
+        assertEquals(Fraction.ZERO, unit.getRemaining());
+        assertEquals(new Fraction(7), unit.getMatrix().get("A", "B").getPreferA());
+    }
+
+    @Test
+    public void testUndecided() {
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var unit = new StreamingTally<>(OPTIONS, FractionField.getInstance(), new Fraction(4));
+
+        unit.add(List.of(builder.ballot(List.of(1,2,3)), builder.ballot(List.of(2,1,3))));
+        assertFalse(unit.isDecided());
+        assertEquals(Optional.empty(), unit.decidedCondorcetWinner());
+
+        unit.add(List.of(builder.ballot(List.of(2,1,3)), builder.ballot(List.of(3,1,2))));
+        assertEquals(Optional.of("B"), unit.decidedWinner());
+    }
+
+    @Test
+    public void testTooManyBallots() {
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var unit = new StreamingTally<>(OPTIONS, FractionField.getInstance(), Fraction.ONE);
+
+        assertThrows(IllegalArgumentException.class,
+                ()->unit.add(Collections.nCopies(2, builder.ballot(List.of(1,2,3)))));
+    }
+}
@@ -0,0 +1,66 @@
+package ca.draconic.vote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.math3.fraction.Fraction;
+import org.apache.commons.math3.fraction.FractionField;
+import org.junit.jupiter.api.Test;
+
+public class WindowedTallyTest {
+
+    static final List<String> OPTIONS = List.of("A", "B", "C");
+
+    static final List<List<Integer>> RANKS = List.of(
+            List.of(1,2,3),
+            List.of(1,3,2),
+            List.of(2,1,1),
+            List.of(3,2,1),
+            List.of(2,3,1),
+            List.of(1,1,2),
+            List.of(3,1,2));
+
+    @Test
+    public void testRanges() {
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var unit = new WindowedTally<>(OPTIONS, FractionField.getInstance());
+        List<List<RankedBallot<String, Fraction>>> batches = new ArrayList<>();
+
+        // Batch i is submitted at time 10*i and holds the first i+1 rankings
+        for (int i=0; i<RANKS.size(); i++) {
+            var batch = RANKS.subList(0, i+1).stream()
+                    .map(builder::ballot)
+                    .collect(Collectors.toList());
+            batches.add(batch);
+            unit.add(10L*i, batch);
+        }
+        assertEquals(RANKS.size(), unit.size());
+
+        for (int from=0; from<=RANKS.size(); from++) {
+            for (int to=from; to<=RANKS.size(); to++) {
+                var expected = PreferenceMatrix.weightedPreferential(OPTIONS,
+                        batches.subList(from, to).stream()
+                            .flatMap(List::stream)
+                            .collect(Collectors.toList()),
+                        FractionField.getInstance());
+                assertEquals(expected.getData(), unit.range(10L*from, 10L*to).getData());
+            }
+        }
+
+        assertEquals(unit.range(0, 35).getData(), unit.asOf(30).getData());
+        assertEquals(unit.range(Long.MIN_VALUE, Long.MAX_VALUE).getData(), unit.total().getData());
+    }
+
+    @Test
+    public void testOutOfOrder() {
+        var builder = RankedBallot.builder(OPTIONS, FractionField.getInstance());
+        var unit = new WindowedTally<>(OPTIONS, FractionField.getInstance());
+        unit.add(5, List.of(builder.ballot(List.of(1,2,3))));
+        assertThrows(IllegalArgumentException.class,
+                ()->unit.add(4, List.of(builder.ballot(List.of(1,2,3)))));
+    }
+}